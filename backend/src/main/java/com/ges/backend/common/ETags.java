@@ -0,0 +1,29 @@
+package com.ges.backend.common;
+
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+// Entity versions are exposed as strong ETags ("3") and checked against If-Match on updates
+public final class ETags {
+    private ETags() {}
+
+    public static String of(long version) {
+        return "\"" + version + "\"";
+    }
+
+    // Expected version from an If-Match header; null when absent or "*". An unparseable tag can never match.
+    public static Long ifMatch(String header) {
+        if (header == null || header.isBlank() || header.trim().equals("*")) return null;
+        var tag = header.trim();
+        if (tag.startsWith("W/")) tag = tag.substring(2);
+        if (tag.length() >= 2 && tag.startsWith("\"") && tag.endsWith("\"")) tag = tag.substring(1, tag.length() - 1);
+        try {
+            return Long.parseLong(tag);
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    public static void check(Long expected, long actual, Class<?> type, Object id) {
+        if (expected != null && expected != actual) throw new ObjectOptimisticLockingFailureException(type, id);
+    }
+}
@@ -0,0 +1,28 @@
+package com.ges.backend.common;
+
+import org.springframework.web.server.ResponseStatusException;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+
+public enum ExportFormat {
+    CSV("text/csv", "csv"),
+    NDJSON("application/x-ndjson", "ndjson");
+
+    private final String contentType;
+    private final String extension;
+
+    ExportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public String contentType() { return contentType; }
+    public String extension() { return extension; }
+
+    public static ExportFormat parse(String value) {
+        for (var f : values()) {
+            if (f.extension.equalsIgnoreCase(value)) return f;
+        }
+        throw new ResponseStatusException(BAD_REQUEST, "Unsupported export format: " + value);
+    }
+}
@@ -0,0 +1,63 @@
+package com.ges.backend.common;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.RecordComponent;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+// Writes export rows one at a time as they come off the database cursor; nothing is collected
+@Component
+public class ExportWriter {
+    private final ObjectMapper objectMapper;
+
+    public ExportWriter(ObjectMapper objectMapper) { this.objectMapper = objectMapper; }
+
+    public <R extends Record> long write(Stream<R> rows, Class<R> type, ExportFormat format, OutputStream out) throws IOException {
+        var writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        var components = type.getRecordComponents();
+        if (format == ExportFormat.CSV) {
+            for (int i = 0; i < components.length; i++) {
+                if (i > 0) writer.write(',');
+                writer.write(components[i].getName());
+            }
+            writer.write('\n');
+        }
+        long count = 0;
+        for (Iterator<R> it = rows.iterator(); it.hasNext(); count++) {
+            R row = it.next();
+            if (format == ExportFormat.CSV) writeCsv(writer, row, components);
+            else writer.write(objectMapper.writeValueAsString(row));
+            writer.write('\n');
+        }
+        writer.flush();
+        return count;
+    }
+
+    private static void writeCsv(Writer writer, Record row, RecordComponent[] components) throws IOException {
+        for (int i = 0; i < components.length; i++) {
+            if (i > 0) writer.write(',');
+            Object value;
+            try {
+                value = components[i].getAccessor().invoke(row);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+            if (value != null) writer.write(csvField(value));
+        }
+    }
+
+    static String csvField(Object value) {
+        String s = value instanceof BigDecimal bd ? bd.toPlainString() : value.toString();
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0) return s;
+        return '"' + s.replace("\"", "\"\"") + '"';
+    }
+}
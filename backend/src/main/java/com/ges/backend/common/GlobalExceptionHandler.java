@@ -1,6 +1,7 @@
 package com.ges.backend.common;
 
 import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
@@ -27,6 +28,12 @@ public class GlobalExceptionHandler {
         return toError(HttpStatus.valueOf(ex.getStatusCode().value()), ex.getReason(), req.getRequestURI());
     }
 
+    // Stale If-Match or a concurrent edit that committed first
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<ApiError> handleConflict(OptimisticLockingFailureException ex, HttpServletRequest req) {
+        return toError(HttpStatus.PRECONDITION_FAILED, "Resource was modified by another request; reload and retry", req.getRequestURI());
+    }
+
     @ExceptionHandler({AccessDeniedException.class, AuthorizationDeniedException.class})
     public ResponseEntity<ApiError> handleAccessDenied(Exception ex, HttpServletRequest req) {
         return toError(HttpStatus.FORBIDDEN, "Access Denied", req.getRequestURI());
@@ -0,0 +1,46 @@
+package com.ges.backend.common;
+
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+
+import java.time.Instant;
+import java.util.UUID;
+
+// A client-supplied Idempotency-Key and the resource its first request created. Inserted before the
+// write it guards, so a concurrent retry blocks on the primary key and then replays instead of writing twice.
+@Entity
+@Table(name = "idempotency_key", indexes = @Index(name = "idx_idempotency_created", columnList = "createdAt"))
+public class IdempotencyRecord implements Persistable<String> {
+    @Id
+    @Column(name = "idempotency_key", length = 150)
+    private String key; // scope:key
+
+    @Column(nullable = false, length = 64)
+    private String requestHash;
+
+    private UUID resourceId;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    @Transient
+    private boolean persisted;
+
+    @PostLoad
+    @PostPersist
+    void markPersisted() { persisted = true; }
+
+    @Override
+    public String getId() { return key; }
+    @Override
+    public boolean isNew() { return !persisted; }
+
+    public String getKey() { return key; }
+    public void setKey(String key) { this.key = key; }
+    public String getRequestHash() { return requestHash; }
+    public void setRequestHash(String requestHash) { this.requestHash = requestHash; }
+    public UUID getResourceId() { return resourceId; }
+    public void setResourceId(UUID resourceId) { this.resourceId = resourceId; }
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+}
@@ -0,0 +1,144 @@
+package com.ges.backend.common;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.UNPROCESSABLE_ENTITY;
+
+// Makes create endpoints safe to retry. Recent keys live in a bounded in-memory LRU so a replay costs a map
+// lookup; the idempotency_key table is the source of truth across restarts and instances.
+@Service
+public class IdempotencyService {
+    public static final String HEADER = "Idempotency-Key";
+    private static final int MAX_KEY_LENGTH = 100;
+
+    private record Entry(String requestHash, UUID resourceId, Instant createdAt) {}
+    private record Outcome<T>(T created, Entry existing) {}
+
+    private final IdempotencyRecordRepository repo;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate tx;
+    private final Duration ttl;
+    private final Clock clock;
+    private final Map<String, Entry> recent;
+
+    public IdempotencyService(IdempotencyRecordRepository repo, ObjectMapper objectMapper, PlatformTransactionManager txManager,
+                              @Value("${idempotency.ttl:PT24H}") Duration ttl,
+                              @Value("${idempotency.cache.max-entries:10000}") int maxEntries) {
+        this.repo = repo;
+        this.objectMapper = objectMapper;
+        this.tx = new TransactionTemplate(txManager);
+        this.ttl = ttl;
+        this.clock = Clock.systemUTC();
+        this.recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) { return size() > maxEntries; }
+        };
+    }
+
+    // Runs create once per (scope, key). A retry with the same key and body gets replay(id) of the first
+    // result; the same key with a different body is rejected. Without a key create simply runs.
+    public <T> T execute(String scope, String key, Object request, Supplier<T> create,
+                         Function<T, UUID> idOf, Function<UUID, T> replay) {
+        if (key == null) return create.get();
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new ResponseStatusException(BAD_REQUEST, HEADER + " must be 1-" + MAX_KEY_LENGTH + " characters");
+        }
+        var id = scope + ":" + key;
+        var hash = hash(request);
+
+        var known = lookup(id);
+        if (known != null) return replay(known, hash, replay);
+
+        try {
+            var outcome = tx.execute(status -> {
+                var existing = repo.findById(id).orElse(null);
+                if (existing != null) {
+                    // Committed by a concurrent request after our lookup: replay it rather than writing again
+                    if (!existing.getCreatedAt().isBefore(clock.instant().minus(ttl))) {
+                        return new Outcome<T>(null, new Entry(existing.getRequestHash(), existing.getResourceId(), existing.getCreatedAt()));
+                    }
+                    repo.delete(existing);
+                    repo.flush();
+                }
+                var record = new IdempotencyRecord();
+                record.setKey(id);
+                record.setRequestHash(hash);
+                record.setCreatedAt(clock.instant());
+                // Flushed first: a concurrent request with the same key waits on this row instead of writing too
+                repo.saveAndFlush(record);
+                var result = create.get();
+                record.setResourceId(idOf.apply(result));
+                return new Outcome<>(result, null);
+            });
+            if (outcome.existing() != null) {
+                remember(id, outcome.existing());
+                return replay(outcome.existing(), hash, replay);
+            }
+            remember(id, new Entry(hash, idOf.apply(outcome.created()), clock.instant()));
+            return outcome.created();
+        } catch (DataIntegrityViolationException e) {
+            var winner = lookup(id);
+            if (winner == null) throw e;
+            return replay(winner, hash, replay);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${idempotency.purge-interval:PT1H}")
+    @Transactional
+    public int purgeExpired() { return repo.deleteCreatedBefore(clock.instant().minus(ttl)); }
+
+    private <T> T replay(Entry entry, String hash, Function<UUID, T> replay) {
+        if (!entry.requestHash().equals(hash)) {
+            throw new ResponseStatusException(UNPROCESSABLE_ENTITY, HEADER + " was already used for a different request");
+        }
+        return replay.apply(entry.resourceId());
+    }
+
+    private Entry lookup(String id) {
+        var cutoff = clock.instant().minus(ttl);
+        Entry cached;
+        synchronized (recent) { cached = recent.get(id); }
+        if (cached != null && cached.createdAt().isAfter(cutoff)) return cached;
+
+        var stored = repo.findById(id).filter(r -> r.getCreatedAt().isAfter(cutoff)).orElse(null);
+        if (stored == null || stored.getResourceId() == null) return null;
+        var entry = new Entry(stored.getRequestHash(), stored.getResourceId(), stored.getCreatedAt());
+        remember(id, entry);
+        return entry;
+    }
+
+    private void remember(String id, Entry entry) {
+        synchronized (recent) { recent.put(id, entry); }
+    }
+
+    private String hash(Object request) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(request));
+            return HexFormat.of().formatHex(digest);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Cannot fingerprint request", e);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.ges.backend.common;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+// Row of a query grouped by stock item id
+public record ItemTotal(
+        UUID stockItemId,
+        BigDecimal quantity,
+        BigDecimal value
+) {}
@@ -0,0 +1,91 @@
+package com.ges.backend.common;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+
+// Keyset ("seek") paging for list endpoints. Rows come newest first by (date, id), or by id alone for tables
+// without a business date (ids are time-ordered). The opaque cursor is the key of the last row returned and
+// the next slice starts strictly after it, so a deep slice costs the same as the first and no COUNT is run.
+public final class Keyset {
+    public static final int MAX_SIZE = 100;
+    private static final Sort DATE_THEN_ID = Sort.by(Sort.Direction.DESC, "date", "id");
+    private static final Sort ID = Sort.by(Sort.Direction.DESC, "id");
+
+    private Keyset() {}
+
+    // after is the cursor from the previous slice; empty starts at the beginning
+    public static <T> KeysetSlice<T> byDateThenId(JpaSpecificationExecutor<T> repo, Specification<T> filter, String after, int size,
+                                                  Function<T, LocalDate> dateOf, Function<T, UUID> idOf) {
+        var spec = filter;
+        var key = decode(after);
+        if (key != null) {
+            LocalDate date;
+            UUID id;
+            try {
+                var parts = key.split("\\|", 2);
+                date = LocalDate.parse(parts[0]);
+                id = UUID.fromString(parts[1]);
+            } catch (RuntimeException e) {
+                throw invalidCursor();
+            }
+            spec = spec.and((root, query, cb) -> cb.or(
+                    cb.lessThan(root.get("date"), date),
+                    cb.and(cb.equal(root.get("date"), date), cb.lessThan(root.get("id"), id))));
+        }
+        return fetch(repo, spec, DATE_THEN_ID, size, row -> dateOf.apply(row) + "|" + idOf.apply(row));
+    }
+
+    public static <T> KeysetSlice<T> byId(JpaSpecificationExecutor<T> repo, Specification<T> filter, String after, int size,
+                                          Function<T, UUID> idOf) {
+        var spec = filter;
+        var key = decode(after);
+        if (key != null) {
+            UUID id;
+            try {
+                id = UUID.fromString(key);
+            } catch (RuntimeException e) {
+                throw invalidCursor();
+            }
+            spec = spec.and((root, query, cb) -> cb.lessThan(root.get("id"), id));
+        }
+        return fetch(repo, spec, ID, size, row -> idOf.apply(row).toString());
+    }
+
+    public static <T> Specification<T> all() { return (root, query, cb) -> null; }
+
+    // One extra row tells whether another slice follows without counting
+    private static <T> KeysetSlice<T> fetch(JpaSpecificationExecutor<T> repo, Specification<T> spec, Sort sort, int size,
+                                            Function<T, String> keyOf) {
+        if (size < 1) throw new ResponseStatusException(BAD_REQUEST, "size must be at least 1");
+        int limit = Math.min(size, MAX_SIZE);
+        List<T> rows = repo.findBy(spec, q -> q.sortBy(sort).limit(limit + 1).all());
+        boolean hasNext = rows.size() > limit;
+        var content = hasNext ? List.copyOf(rows.subList(0, limit)) : rows;
+        var next = hasNext ? Base64.getUrlEncoder().withoutPadding().encodeToString(keyOf.apply(content.getLast()).getBytes(StandardCharsets.UTF_8)) : null;
+        return new KeysetSlice<>(content, limit, hasNext, next);
+    }
+
+    private static String decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) return null;
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw invalidCursor();
+        }
+    }
+
+    private static ResponseStatusException invalidCursor() {
+        return new ResponseStatusException(BAD_REQUEST, "Invalid cursor");
+    }
+}
@@ -0,0 +1,6 @@
+package com.ges.backend.common;
+
+import java.util.List;
+
+// One slice of a keyset-paged list; pass next as ?after= to get the following slice (null on the last one)
+public record KeysetSlice<T>(List<T> content, int size, boolean hasNext, String next) {}
@@ -0,0 +1,14 @@
+package com.ges.backend.common;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+
+// Row of a query grouped by year(date), month(date)
+public record MonthlyTotal(
+        Integer year,
+        Integer month,
+        Long count,
+        BigDecimal amount
+) {
+    public YearMonth yearMonth() { return YearMonth.of(year, month); }
+}
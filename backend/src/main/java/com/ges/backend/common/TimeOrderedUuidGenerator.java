@@ -0,0 +1,38 @@
+package com.ges.backend.common;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.hibernate.generator.EventTypeSets;
+
+import java.security.SecureRandom;
+import java.util.EnumSet;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+// RFC 9562 UUIDv7: 48-bit Unix millisecond timestamp, version, 12-bit sequence, variant, 62 random bits.
+// Keys generated later sort later, so InnoDB appends to the right edge of the clustered index
+// instead of splitting random pages. The sequence keeps ids from one node strictly increasing
+// within a millisecond; if it overflows, the timestamp field is borrowed ahead by a millisecond.
+public class TimeOrderedUuidGenerator implements BeforeExecutionGenerator {
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final AtomicLong LAST = new AtomicLong();
+
+    public static UUID next() {
+        long candidate = System.currentTimeMillis() << 12;
+        long stamp = LAST.updateAndGet(prev -> Math.max(prev + 1, candidate));
+        long msb = ((stamp >>> 12) << 16) | 0x7000L | (stamp & 0xFFFL);
+        long lsb = (RANDOM.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(msb, lsb);
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object owner, Object currentValue, EventType eventType) {
+        return next();
+    }
+
+    @Override
+    public EnumSet<EventType> getEventTypes() {
+        return EventTypeSets.INSERT_ONLY;
+    }
+}
@@ -0,0 +1,42 @@
+package com.ges.backend.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class ReportExecutorConfig {
+
+    // Bounded pool for fanning out independent report queries; when saturated the caller runs the query itself
+    @Bean
+    public ThreadPoolTaskExecutor reportExecutor(@Value("${reports.executor.threads:4}") int threads,
+                                                 @Value("${reports.executor.queue-capacity:64}") int queueCapacity) {
+        var executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("report-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    // Separate pool for queued report jobs so heavy reports never occupy request threads; a full queue rejects
+    @Bean
+    public ThreadPoolTaskExecutor reportJobExecutor(@Value("${reports.jobs.threads:2}") int threads,
+                                                    @Value("${reports.jobs.queue-capacity:16}") int queueCapacity) {
+        var executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("report-job-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+}
@@ -1,14 +1,21 @@
 package com.ges.backend.expense;
 
+import com.ges.backend.common.TimeOrderedUuid;
 import jakarta.persistence.*;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.UUID;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_expense_date", columnList = "date"),
+        @Index(name = "idx_expense_category_date", columnList = "category, date")
+})
 public class Expense {
-    @Id @GeneratedValue
+    @Id @TimeOrderedUuid
     private UUID id;
+    @Version
+    private long version;
     @Column(nullable = false)
     private String category;
     private String description;
@@ -19,6 +26,7 @@ public class Expense {
 
     public UUID getId() { return id; }
     public void setId(UUID id) { this.id = id; }
+    public long getVersion() { return version; }
     public String getCategory() { return category; }
     public void setCategory(String category) { this.category = category; }
     public String getDescription() { return description; }
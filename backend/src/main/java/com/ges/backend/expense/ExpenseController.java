@@ -1,15 +1,27 @@
 package com.ges.backend.expense;
 
+import com.ges.backend.common.ETags;
+import com.ges.backend.common.ExportFormat;
+import com.ges.backend.common.KeysetSlice;
 import com.ges.backend.expense.dto.ExpenseDtos;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.springframework.data.domain.Page;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.time.LocalDate;
 import java.util.UUID;
 
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+
 @RestController
 @RequestMapping("/api/expenses")
 @Tag(name = "Expenses", description = "Record and manage expenses")
@@ -19,14 +31,51 @@ public class ExpenseController {
 
     @GetMapping
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
-    @Operation(summary = "List expenses")
+    @Operation(summary = "List expenses", description = "Optional filters: date range (inclusive) and category")
     public Page<Expense> list(@RequestParam(defaultValue = "1") int page,
-                              @RequestParam(defaultValue = "20") int size) { return service.list(page, size); }
+                              @RequestParam(defaultValue = "20") int size,
+                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                              @RequestParam(required = false) String category) {
+        if (from != null && to != null && from.isAfter(to)) throw new ResponseStatusException(BAD_REQUEST, "from must not be after to");
+        return service.list(page, size, new ExpenseDtos.Filter(from, to, category));
+    }
+
+    @GetMapping(params = "after")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
+    @Operation(summary = "List expenses by cursor", description = "Newest first by (date, id); pass the returned 'next' as 'after' for the following slice. Same filters as the paged list")
+    public KeysetSlice<Expense> listAfter(@RequestParam String after,
+                                          @RequestParam(defaultValue = "20") int size,
+                                          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                          @RequestParam(required = false) String category) {
+        if (from != null && to != null && from.isAfter(to)) throw new ResponseStatusException(BAD_REQUEST, "from must not be after to");
+        return service.listAfter(after, size, new ExpenseDtos.Filter(from, to, category));
+    }
+
+    @GetMapping("/export")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
+    @Operation(summary = "Export expenses", description = "Streams rows dated between from and to (inclusive) as csv or ndjson")
+    public void export(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                       @RequestParam(defaultValue = "csv") String format,
+                       HttpServletResponse response) throws IOException {
+        var fmt = ExportFormat.parse(format);
+        if (from.isAfter(to)) throw new ResponseStatusException(BAD_REQUEST, "from must not be after to");
+        response.setContentType(fmt.contentType());
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"expenses-" + from + "_" + to + "." + fmt.extension() + "\"");
+        service.export(from, to, fmt, response.getOutputStream());
+    }
 
     @GetMapping("/{id}")
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
     @Operation(summary = "Get expense")
-    public Expense get(@PathVariable UUID id) { return service.get(id); }
+    public ResponseEntity<Expense> get(@PathVariable UUID id) {
+        var entity = service.get(id);
+        return ResponseEntity.ok().eTag(ETags.of(entity.getVersion())).body(entity);
+    }
 
     @PostMapping
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
@@ -36,7 +85,11 @@ public class ExpenseController {
     @PutMapping("/{id}")
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
     @Operation(summary = "Update expense")
-    public Expense update(@PathVariable UUID id, @RequestBody @Valid ExpenseDtos.Create body) { return service.update(id, body); }
+    public ResponseEntity<Expense> update(@PathVariable UUID id, @RequestBody @Valid ExpenseDtos.Create body,
+                                          @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        var entity = service.update(id, body, ETags.ifMatch(ifMatch));
+        return ResponseEntity.ok().eTag(ETags.of(entity.getVersion())).body(entity);
+    }
 
     @DeleteMapping("/{id}")
     @PreAuthorize("hasRole('ADMIN')")
@@ -1,7 +1,56 @@
 package com.ges.backend.expense;
 
+import com.ges.backend.common.MonthlyTotal;
+import com.ges.backend.expense.dto.ExpenseDtos;
+import jakarta.persistence.QueryHint;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
-public interface ExpenseRepository extends JpaRepository<Expense, UUID> {}
\ No newline at end of file
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+
+public interface ExpenseRepository extends JpaRepository<Expense, UUID>, JpaSpecificationExecutor<Expense> {
+    @Query("select coalesce(sum(e.amount), 0) from Expense e where e.date between :from and :to")
+    BigDecimal sumAmountBetween(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Query("select min(e.date) from Expense e")
+    LocalDate findEarliestDate();
+
+    @Query("select max(e.date) from Expense e")
+    LocalDate findLatestDate();
+
+    @Query("""
+            select new com.ges.backend.common.MonthlyTotal(year(e.date), month(e.date), count(e), coalesce(sum(e.amount), 0))
+            from Expense e where e.date between :from and :to
+            group by year(e.date), month(e.date)""")
+    List<MonthlyTotal> sumAmountByMonth(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("""
+            select new com.ges.backend.expense.dto.ExpenseDtos$ExportLine(e.id, e.date, e.category, e.description, e.amount)
+            from Expense e where e.date between :from and :to
+            order by e.date, e.id""")
+    Stream<ExpenseDtos.ExportLine> streamExportLines(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    // Category filters seek idx_expense_category_date
+    static Specification<Expense> matching(ExpenseDtos.Filter f) {
+        return (root, query, cb) -> {
+            var predicates = new ArrayList<Predicate>();
+            if (f.from() != null) predicates.add(cb.greaterThanOrEqualTo(root.get("date"), f.from()));
+            if (f.to() != null) predicates.add(cb.lessThanOrEqualTo(root.get("date"), f.to()));
+            if (f.category() != null && !f.category().isBlank()) predicates.add(cb.equal(root.get("category"), f.category()));
+            return cb.and(predicates.toArray(Predicate[]::new));
+        };
+    }
+}
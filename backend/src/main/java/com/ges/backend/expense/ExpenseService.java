@@ -1,11 +1,21 @@
 package com.ges.backend.expense;
 
+import com.ges.backend.common.ETags;
+import com.ges.backend.common.ExportFormat;
+import com.ges.backend.common.ExportWriter;
+import com.ges.backend.common.Keyset;
+import com.ges.backend.common.KeysetSlice;
 import com.ges.backend.expense.dto.ExpenseDtos;
+import com.ges.backend.report.MonthlyRollupService;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
 import java.util.UUID;
 
 import static org.springframework.http.HttpStatus.NOT_FOUND;
@@ -13,29 +23,63 @@ import static org.springframework.http.HttpStatus.NOT_FOUND;
 @Service
 public class ExpenseService {
     private final ExpenseRepository repo;
-    public ExpenseService(ExpenseRepository repo) { this.repo = repo; }
+    private final MonthlyRollupService rollups;
+    private final ExportWriter exporter;
 
-    public Page<Expense> list(int page, int size) { return repo.findAll(PageRequest.of(Math.max(page-1,0), size)); }
+    public ExpenseService(ExpenseRepository repo, MonthlyRollupService rollups, ExportWriter exporter) {
+        this.repo = repo;
+        this.rollups = rollups;
+        this.exporter = exporter;
+    }
+
+    public Page<Expense> list(int page, int size, ExpenseDtos.Filter filter) {
+        return repo.findAll(ExpenseRepository.matching(filter), PageRequest.of(Math.max(page-1,0), size));
+    }
+
+    public KeysetSlice<Expense> listAfter(String after, int size, ExpenseDtos.Filter filter) {
+        return Keyset.byDateThenId(repo, ExpenseRepository.matching(filter), after, size, Expense::getDate, Expense::getId);
+    }
 
     public Expense get(UUID id) { return repo.findById(id).orElseThrow(() -> new ResponseStatusException(NOT_FOUND, "Expense not found")); }
 
+    @Transactional(readOnly = true)
+    public long export(LocalDate from, LocalDate to, ExportFormat format, OutputStream out) throws IOException {
+        try (var rows = repo.streamExportLines(from, to)) {
+            return exporter.write(rows, ExpenseDtos.ExportLine.class, format, out);
+        }
+    }
+
+    @Transactional
     public Expense create(ExpenseDtos.Create dto) {
         var e = new Expense();
         e.setCategory(dto.category());
         e.setDescription(dto.description());
         e.setAmount(dto.amount());
         e.setDate(dto.date());
-        return repo.save(e);
+        var saved = repo.save(e);
+        rollups.addExpense(saved.getDate(), saved.getAmount());
+        return saved;
     }
 
-    public Expense update(UUID id, ExpenseDtos.Create dto) {
+    @Transactional
+    public Expense update(UUID id, ExpenseDtos.Create dto, Long expectedVersion) {
         var e = get(id);
+        ETags.check(expectedVersion, e.getVersion(), Expense.class, id);
+        rollups.addExpense(e.getDate(), e.getAmount().negate());
         e.setCategory(dto.category());
         e.setDescription(dto.description());
         e.setAmount(dto.amount());
         e.setDate(dto.date());
-        return repo.save(e);
+        var saved = repo.save(e);
+        rollups.addExpense(saved.getDate(), saved.getAmount());
+        return saved;
     }
 
-    public void delete(UUID id) { repo.deleteById(id); }
+    @Transactional
+    public void delete(UUID id) {
+        repo.findById(id).ifPresent(e -> {
+            rollups.addExpense(e.getDate(), e.getAmount().negate());
+            repo.delete(e);
+        });
+    }
 }
\ No newline at end of file
@@ -5,6 +5,7 @@ import jakarta.validation.constraints.NotNull;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.UUID;
 
 public class ExpenseDtos {
     public record Create(
@@ -13,4 +14,9 @@ public class ExpenseDtos {
             @NotNull BigDecimal amount,
             @NotNull LocalDate date
     ) {}
+
+    // List filters; null means "any"
+    public record Filter(LocalDate from, LocalDate to, String category) {}
+
+    public record ExportLine(UUID id, LocalDate date, String category, String description, BigDecimal amount) {}
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package com.ges.backend.purchase;
 
+import com.ges.backend.common.TimeOrderedUuid;
 import jakarta.persistence.*;
 import java.math.BigDecimal;
 import java.time.LocalDate;
@@ -8,9 +9,15 @@ import java.util.List;
 import java.util.UUID;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_purchase_date", columnList = "date"),
+        @Index(name = "idx_purchase_supplier_date", columnList = "supplierId, date")
+})
 public class Purchase {
-    @Id @GeneratedValue
+    @Id @TimeOrderedUuid
     private UUID id;
+    @Version
+    private long version;
     @Column(nullable = false)
     private UUID supplierId;
     @Column(nullable = false)
@@ -23,6 +30,7 @@ public class Purchase {
 
     public UUID getId() { return id; }
     public void setId(UUID id) { this.id = id; }
+    public long getVersion() { return version; }
     public UUID getSupplierId() { return supplierId; }
     public void setSupplierId(UUID supplierId) { this.supplierId = supplierId; }
     public LocalDate getDate() { return date; }
@@ -1,5 +1,9 @@
 package com.ges.backend.purchase;
 
+import com.ges.backend.common.ETags;
+import com.ges.backend.common.ExportFormat;
+import com.ges.backend.common.IdempotencyService;
+import com.ges.backend.common.KeysetSlice;
 import com.ges.backend.purchase.dto.PurchaseDtos;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -7,42 +11,108 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.springframework.data.domain.Page;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
 import java.util.UUID;
 
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+
 @RestController
 @RequestMapping("/api/purchases")
 @Tag(name = "Purchases", description = "Manage purchases and update stock quantities")
 public class PurchaseController {
     private final PurchaseService service;
-    public PurchaseController(PurchaseService service) { this.service = service; }
+    private final IdempotencyService idempotency;
+
+    public PurchaseController(PurchaseService service, IdempotencyService idempotency) {
+        this.service = service;
+        this.idempotency = idempotency;
+    }
 
     @GetMapping
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER','STAFF')")
-    @Operation(summary = "List purchases")
+    @Operation(summary = "List purchases", description = "Optional filters: date range (inclusive) and supplier")
     @ApiResponses({ @ApiResponse(responseCode = "200", description = "Page of purchases",
         content = @Content(schema = @Schema(implementation = org.springframework.data.domain.Page.class))) })
     public Page<Purchase> list(@RequestParam(defaultValue = "1") int page,
-                               @RequestParam(defaultValue = "20") int size) { return service.list(page, size); }
+                               @RequestParam(defaultValue = "20") int size,
+                               @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                               @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                               @RequestParam(required = false) UUID supplierId) {
+        if (from != null && to != null && from.isAfter(to)) throw new ResponseStatusException(BAD_REQUEST, "from must not be after to");
+        return service.list(page, size, new PurchaseDtos.Filter(from, to, supplierId));
+    }
+
+    @GetMapping(params = "after")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER','STAFF')")
+    @Operation(summary = "List purchases by cursor", description = "Newest first by (date, id); pass the returned 'next' as 'after' for the following slice. Same filters as the paged list")
+    public KeysetSlice<Purchase> listAfter(@RequestParam String after,
+                                           @RequestParam(defaultValue = "20") int size,
+                                           @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                           @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                           @RequestParam(required = false) UUID supplierId) {
+        if (from != null && to != null && from.isAfter(to)) throw new ResponseStatusException(BAD_REQUEST, "from must not be after to");
+        return service.listAfter(after, size, new PurchaseDtos.Filter(from, to, supplierId));
+    }
+
+    @GetMapping("/export")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
+    @Operation(summary = "Export purchase lines", description = "Streams rows dated between from and to (inclusive) as csv or ndjson")
+    public void export(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                       @RequestParam(defaultValue = "csv") String format,
+                       HttpServletResponse response) throws IOException {
+        var fmt = ExportFormat.parse(format);
+        if (from.isAfter(to)) throw new ResponseStatusException(BAD_REQUEST, "from must not be after to");
+        response.setContentType(fmt.contentType());
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"purchases-" + from + "_" + to + "." + fmt.extension() + "\"");
+        service.export(from, to, fmt, response.getOutputStream());
+    }
 
     @GetMapping("/{id}")
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER','STAFF')")
     @Operation(summary = "Get purchase")
-    public Purchase get(@PathVariable UUID id) { return service.get(id); }
+    public ResponseEntity<Purchase> get(@PathVariable UUID id) {
+        var entity = service.get(id);
+        return ResponseEntity.ok().eTag(ETags.of(entity.getVersion())).body(entity);
+    }
 
     @PostMapping
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
-    @Operation(summary = "Create purchase", description = "Creates a purchase and increments stock quantities accordingly")
-    public Purchase create(@RequestBody @Valid PurchaseDtos.Create body) { return service.create(body); }
+    @Operation(summary = "Create purchase", description = "Creates a purchase and increments stock quantities accordingly. "
+            + "Retries carrying the same Idempotency-Key return the original purchase without incrementing again")
+    public Purchase create(@RequestBody @Valid PurchaseDtos.Create body,
+                           @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return idempotency.execute("purchase", idempotencyKey, body, () -> service.create(body), Purchase::getId, service::get);
+    }
+
+    @PostMapping("/bulk")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
+    @Operation(summary = "Import purchases in bulk",
+            description = "Validates every document, then saves the valid ones in batched transactions and reports the outcome per document")
+    public PurchaseDtos.BulkResponse bulk(@RequestBody List<PurchaseDtos.Create> body) { return service.bulkCreate(body); }
 
     @PutMapping("/{id}")
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
     @Operation(summary = "Update purchase", description = "Updates a purchase and adjusts stock quantities accordingly")
-    public Purchase update(@PathVariable UUID id, @RequestBody @Valid PurchaseDtos.Create body) { return service.update(id, body); }
+    public ResponseEntity<Purchase> update(@PathVariable UUID id, @RequestBody @Valid PurchaseDtos.Create body,
+                                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        var entity = service.update(id, body, ETags.ifMatch(ifMatch));
+        return ResponseEntity.ok().eTag(ETags.of(entity.getVersion())).body(entity);
+    }
 
     @DeleteMapping("/{id}")
     @PreAuthorize("hasRole('ADMIN')")
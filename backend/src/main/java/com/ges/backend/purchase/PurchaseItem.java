@@ -1,12 +1,13 @@
 package com.ges.backend.purchase;
 
+import com.ges.backend.common.TimeOrderedUuid;
 import jakarta.persistence.*;
 import java.math.BigDecimal;
 import java.util.UUID;
 
 @Entity
 public class PurchaseItem {
-    @Id @GeneratedValue
+    @Id @TimeOrderedUuid
     private UUID id;
 
     @ManyToOne(optional = false)
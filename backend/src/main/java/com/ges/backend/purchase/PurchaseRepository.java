@@ -1,12 +1,87 @@
 package com.ges.backend.purchase;
 
+import com.ges.backend.common.ItemTotal;
+import com.ges.backend.common.MonthlyTotal;
+import com.ges.backend.purchase.dto.PurchaseDtos;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
-public interface PurchaseRepository extends JpaRepository<Purchase, UUID> {
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+
+public interface PurchaseRepository extends JpaRepository<Purchase, UUID>, JpaSpecificationExecutor<Purchase> {
     @Override
     @EntityGraph(attributePaths = {"items"})
     java.util.Optional<Purchase> findById(UUID id);
-}
\ No newline at end of file
+
+    // Replacing lines alone does not dirty the purchase row, so updates force the version bump
+    @Lock(LockModeType.OPTIMISTIC_FORCE_INCREMENT)
+    @Query("select p from Purchase p where p.id = :id")
+    java.util.Optional<Purchase> findForUpdate(@Param("id") UUID id);
+
+    @Query("select coalesce(sum(p.totalCost), 0) from Purchase p where p.date between :from and :to")
+    BigDecimal sumTotalCostBetween(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Query("select min(p.date) from Purchase p")
+    LocalDate findEarliestDate();
+
+    @Query("select max(p.date) from Purchase p")
+    LocalDate findLatestDate();
+
+    @Query("""
+            select new com.ges.backend.common.MonthlyTotal(year(p.date), month(p.date), count(p), coalesce(sum(p.totalCost), 0))
+            from Purchase p where p.date between :from and :to
+            group by year(p.date), month(p.date)""")
+    List<MonthlyTotal> sumTotalCostByMonth(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Query("""
+            select new com.ges.backend.common.ItemTotal(i.stockItemId, sum(i.quantity), sum(i.quantity * i.price))
+            from PurchaseItem i join i.purchase p
+            where p.date between :from and :to
+            group by i.stockItemId""")
+    List<ItemTotal> sumLinesByItem(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Query("""
+            select new com.ges.backend.purchase.dto.PurchaseDtos$SupplierSpend(p.supplierId, sp.name, count(p), sum(p.totalCost))
+            from Purchase p left join Supplier sp on sp.id = p.supplierId
+            where p.date between :from and :to
+            group by p.supplierId, sp.name
+            order by sum(p.totalCost) desc, p.supplierId""")
+    List<PurchaseDtos.SupplierSpend> topSuppliersBySpend(@Param("from") LocalDate from, @Param("to") LocalDate to, Limit limit);
+
+    // Lines come back in purchase order so a purchase's rows stay together in the export
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("""
+            select new com.ges.backend.purchase.dto.PurchaseDtos$ExportLine(p.id, p.date, p.supplierId, p.totalCost, i.stockItemId, i.quantity, i.price)
+            from PurchaseItem i join i.purchase p
+            where p.date between :from and :to
+            order by p.date, p.id, i.id""")
+    Stream<PurchaseDtos.ExportLine> streamExportLines(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    // Supplier filters seek idx_purchase_supplier_date
+    static Specification<Purchase> matching(PurchaseDtos.Filter f) {
+        return (root, query, cb) -> {
+            var predicates = new ArrayList<Predicate>();
+            if (f.from() != null) predicates.add(cb.greaterThanOrEqualTo(root.get("date"), f.from()));
+            if (f.to() != null) predicates.add(cb.lessThanOrEqualTo(root.get("date"), f.to()));
+            if (f.supplierId() != null) predicates.add(cb.equal(root.get("supplierId"), f.supplierId()));
+            return cb.and(predicates.toArray(Predicate[]::new));
+        };
+    }
+}
@@ -1,35 +1,183 @@
 package com.ges.backend.purchase;
 
+import com.ges.backend.common.ETags;
+import com.ges.backend.common.ExportFormat;
+import com.ges.backend.common.ExportWriter;
+import com.ges.backend.common.Keyset;
+import com.ges.backend.common.KeysetSlice;
 import com.ges.backend.purchase.dto.PurchaseDtos;
-import com.ges.backend.stock.StockItem;
-import com.ges.backend.stock.StockItemRepository;
+import com.ges.backend.report.MonthlyRollupService;
+import com.ges.backend.stock.MovementSource;
+import com.ges.backend.stock.StockItemService;
+import com.ges.backend.stock.dto.StockDtos;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
 import static org.springframework.http.HttpStatus.NOT_FOUND;
 
 @Service
 public class PurchaseService {
     private final PurchaseRepository repo;
-    private final StockItemRepository stockRepo;
+    private final StockItemService stock;
+    private final MonthlyRollupService rollups;
+    private final ExportWriter exporter;
+    private final Validator validator;
+    private final TransactionTemplate tx;
+    private final int bulkBatchSize;
+    private final int bulkMaxDocuments;
 
-    public PurchaseService(PurchaseRepository repo, StockItemRepository stockRepo) {
+    public PurchaseService(PurchaseRepository repo, StockItemService stock, MonthlyRollupService rollups,
+                           ExportWriter exporter, Validator validator, PlatformTransactionManager txManager,
+                           @Value("${purchases.bulk.batch-size:100}") int bulkBatchSize,
+                           @Value("${purchases.bulk.max-documents:5000}") int bulkMaxDocuments) {
         this.repo = repo;
-        this.stockRepo = stockRepo;
+        this.stock = stock;
+        this.rollups = rollups;
+        this.exporter = exporter;
+        this.validator = validator;
+        this.tx = new TransactionTemplate(txManager);
+        this.bulkBatchSize = Math.max(bulkBatchSize, 1);
+        this.bulkMaxDocuments = bulkMaxDocuments;
     }
 
-    public Page<Purchase> list(int page, int size) { return repo.findAll(PageRequest.of(Math.max(page-1,0), size)); }
+    public Page<Purchase> list(int page, int size, PurchaseDtos.Filter filter) {
+        return repo.findAll(PurchaseRepository.matching(filter), PageRequest.of(Math.max(page-1,0), size));
+    }
+
+    public KeysetSlice<Purchase> listAfter(String after, int size, PurchaseDtos.Filter filter) {
+        return Keyset.byDateThenId(repo, PurchaseRepository.matching(filter), after, size, Purchase::getDate, Purchase::getId);
+    }
 
     public Purchase get(UUID id) { return repo.findById(id).orElseThrow(() -> new ResponseStatusException(NOT_FOUND, "Purchase not found")); }
 
+    @Transactional(readOnly = true)
+    public long export(LocalDate from, LocalDate to, ExportFormat format, OutputStream out) throws IOException {
+        try (var rows = repo.streamExportLines(from, to)) {
+            return exporter.write(rows, PurchaseDtos.ExportLine.class, format, out);
+        }
+    }
+
     @Transactional
     public Purchase create(PurchaseDtos.Create dto) {
+        // save() only assigns the id here; the insert is flushed after the stock checks pass.
+        // All referenced items are loaded and checked in one go.
+        var saved = repo.save(newPurchase(dto));
+        var deltas = new LinkedHashMap<UUID, BigDecimal>();
+        addLines(deltas, dto.items());
+        stock.adjustQuantities(deltas, MovementSource.PURCHASE, saved.getId());
+        rollups.addPurchase(saved.getDate(), saved.getTotalCost());
+        return saved;
+    }
+
+    // Every document is validated and its items checked with one lookup before anything is written.
+    // Valid documents are then committed in transactions of bulkBatchSize; a chunk that fails as a whole
+    // (e.g. an item deleted meanwhile) is retried one document per transaction so only the culprits fail.
+    public PurchaseDtos.BulkResponse bulkCreate(List<PurchaseDtos.Create> docs) {
+        if (docs.size() > bulkMaxDocuments) {
+            throw new ResponseStatusException(BAD_REQUEST, "At most " + bulkMaxDocuments + " documents per request");
+        }
+        var results = new PurchaseDtos.BulkResult[docs.size()];
+        var known = stock.existingIds(referencedItems(docs));
+        var valid = new ArrayList<Integer>();
+        for (int i = 0; i < docs.size(); i++) {
+            var error = problems(docs.get(i), known);
+            if (error != null) results[i] = new PurchaseDtos.BulkResult(i, null, error);
+            else valid.add(i);
+        }
+
+        for (int from = 0; from < valid.size(); from += bulkBatchSize) {
+            var chunk = valid.subList(from, Math.min(from + bulkBatchSize, valid.size()));
+            try {
+                var saved = tx.execute(status -> createAll(chunk.stream().map(docs::get).toList()));
+                for (int j = 0; j < chunk.size(); j++) {
+                    results[chunk.get(j)] = new PurchaseDtos.BulkResult(chunk.get(j), saved.get(j).getId(), null);
+                }
+            } catch (RuntimeException chunkFailure) {
+                for (int i : chunk) {
+                    try {
+                        var saved = tx.execute(status -> create(docs.get(i)));
+                        results[i] = new PurchaseDtos.BulkResult(i, saved.getId(), null);
+                    } catch (RuntimeException e) {
+                        results[i] = new PurchaseDtos.BulkResult(i, null,
+                                e instanceof ResponseStatusException rse ? rse.getReason() : "Could not be saved");
+                    }
+                }
+            }
+        }
+        int created = (int) Arrays.stream(results).filter(r -> r.error() == null).count();
+        return new PurchaseDtos.BulkResponse(created, results.length - created, List.of(results));
+    }
+
+    // One stock adjustment and one rollup change per month for the whole chunk; purchases insert as a batch
+    private List<Purchase> createAll(List<PurchaseDtos.Create> dtos) {
+        var saved = repo.saveAll(dtos.stream().map(PurchaseService::newPurchase).toList());
+        var changes = new ArrayList<StockDtos.Change>();
+        var ids = new HashSet<UUID>();
+        for (var p : saved) {
+            var deltas = new LinkedHashMap<UUID, BigDecimal>();
+            for (var line : p.getItems()) deltas.merge(line.getStockItemId(), line.getQuantity(), BigDecimal::add);
+            deltas.forEach((id, delta) -> changes.add(new StockDtos.Change(id, delta, MovementSource.PURCHASE, p.getId())));
+            ids.addAll(deltas.keySet());
+        }
+        stock.applyChanges(stock.lockAll(ids), changes);
+
+        var byMonth = new TreeMap<YearMonth, BigDecimal>();
+        saved.forEach(p -> byMonth.merge(YearMonth.from(p.getDate()), p.getTotalCost(), BigDecimal::add));
+        byMonth.forEach((ym, total) -> rollups.addPurchase(ym.atDay(1), total));
+        return saved;
+    }
+
+    private static Set<UUID> referencedItems(List<PurchaseDtos.Create> docs) {
+        var ids = new HashSet<UUID>();
+        for (var doc : docs) {
+            if (doc == null || doc.items() == null) continue;
+            for (var line : doc.items()) if (line != null && line.stockItemId() != null) ids.add(line.stockItemId());
+        }
+        return ids;
+    }
+
+    private String problems(PurchaseDtos.Create doc, Set<UUID> knownItems) {
+        if (doc == null) return "Document is empty";
+        var violations = validator.validate(doc);
+        if (!violations.isEmpty()) {
+            return violations.stream().map(v -> v.getPropertyPath() + " " + v.getMessage()).sorted()
+                    .collect(Collectors.joining("; "));
+        }
+        var missing = doc.items().stream().map(PurchaseDtos.Item::stockItemId).distinct()
+                .filter(id -> !knownItems.contains(id)).map(UUID::toString).toList();
+        return missing.isEmpty() ? null : "Stock items not found: " + String.join(", ", missing);
+    }
+
+    private static Purchase newPurchase(PurchaseDtos.Create dto) {
         var p = new Purchase();
         p.setSupplierId(dto.supplierId());
         p.setDate(dto.date());
@@ -42,54 +190,73 @@ public class PurchaseService {
             pi.setQuantity(itemDto.quantity());
             pi.setPrice(itemDto.price());
             p.getItems().add(pi);
-
-            StockItem si = stockRepo.findById(itemDto.stockItemId())
-                    .orElseThrow(() -> new ResponseStatusException(NOT_FOUND, "Stock item not found"));
-            si.setQuantity(si.getQuantity().add(itemDto.quantity()));
-            stockRepo.save(si);
-
             total = total.add(itemDto.price().multiply(itemDto.quantity()));
         }
         p.setTotalCost(total);
-        return repo.save(p);
+        return p;
     }
 
     @Transactional
-    public Purchase update(UUID id, PurchaseDtos.Create dto) {
-        Purchase p = get(id);
-        
-        // Revert previous stock changes
-        for (var item : p.getItems()) {
-            StockItem si = stockRepo.findById(item.getStockItemId())
-                    .orElseThrow(() -> new ResponseStatusException(NOT_FOUND, "Stock item not found"));
-            si.setQuantity(si.getQuantity().subtract(item.getQuantity()));
-            stockRepo.save(si);
-        }
-        
-        // Clear and rebuild items
-        p.getItems().clear();
-        p.setSupplierId(dto.supplierId());
-        p.setDate(dto.date());
-        
+    public Purchase update(UUID id, PurchaseDtos.Create dto, Long expectedVersion) {
+        Purchase p = repo.findForUpdate(id).orElseThrow(() -> new ResponseStatusException(NOT_FOUND, "Purchase not found"));
+        ETags.check(expectedVersion, p.getVersion(), Purchase.class, id);
+        var oldDate = p.getDate();
+        var oldTotal = p.getTotalCost();
+
+        // Net stock change per item: old lines reverted, new lines applied. Items whose net change
+        // is zero are left alone; items only in the new lines are still checked for existence.
+        var deltas = new LinkedHashMap<UUID, BigDecimal>();
+        for (var item : p.getItems()) deltas.merge(item.getStockItemId(), item.getQuantity().negate(), BigDecimal::add);
+        var oldIds = Set.copyOf(deltas.keySet());
+        addLines(deltas, dto.items());
+        deltas.entrySet().removeIf(e -> e.getValue().signum() == 0 && oldIds.contains(e.getKey()));
+        stock.adjustQuantities(deltas, MovementSource.PURCHASE, id);
+
+        // Diff lines per stock item: existing rows are reused in order and only written when they
+        // change, surplus rows are removed and extra lines inserted
+        var existing = new HashMap<UUID, Deque<PurchaseItem>>();
+        for (var item : p.getItems()) existing.computeIfAbsent(item.getStockItemId(), k -> new ArrayDeque<>()).add(item);
+        var kept = Collections.newSetFromMap(new IdentityHashMap<PurchaseItem, Boolean>());
         BigDecimal total = BigDecimal.ZERO;
         for (var itemDto : dto.items()) {
-            var pi = new PurchaseItem();
-            pi.setPurchase(p);
-            pi.setStockItemId(itemDto.stockItemId());
-            pi.setQuantity(itemDto.quantity());
-            pi.setPrice(itemDto.price());
-            p.getItems().add(pi);
-            
-            StockItem si = stockRepo.findById(itemDto.stockItemId())
-                    .orElseThrow(() -> new ResponseStatusException(NOT_FOUND, "Stock item not found"));
-            si.setQuantity(si.getQuantity().add(itemDto.quantity()));
-            stockRepo.save(si);
-            
+            var rows = existing.get(itemDto.stockItemId());
+            var pi = rows != null ? rows.poll() : null;
+            if (pi == null) {
+                pi = new PurchaseItem();
+                pi.setPurchase(p);
+                pi.setStockItemId(itemDto.stockItemId());
+                p.getItems().add(pi);
+            }
+            if (pi.getQuantity() == null || pi.getQuantity().compareTo(itemDto.quantity()) != 0) pi.setQuantity(itemDto.quantity());
+            if (pi.getPrice() == null || pi.getPrice().compareTo(itemDto.price()) != 0) pi.setPrice(itemDto.price());
+            kept.add(pi);
             total = total.add(itemDto.price().multiply(itemDto.quantity()));
         }
-        p.setTotalCost(total);
-        return repo.save(p);
+        p.getItems().removeIf(item -> !kept.contains(item));
+
+        p.setSupplierId(dto.supplierId());
+        p.setDate(dto.date());
+        if (total.compareTo(oldTotal) != 0) p.setTotalCost(total);
+        var saved = repo.save(p);
+        if (YearMonth.from(oldDate).equals(YearMonth.from(saved.getDate()))) {
+            if (total.compareTo(oldTotal) != 0) rollups.addPurchase(saved.getDate(), total.subtract(oldTotal));
+        } else {
+            rollups.addPurchase(oldDate, oldTotal.negate());
+            rollups.addPurchase(saved.getDate(), total);
+        }
+        return saved;
+    }
+
+    // Repeated lines for the same item are merged so each item is touched once
+    private static void addLines(Map<UUID, BigDecimal> deltas, List<PurchaseDtos.Item> lines) {
+        for (var line : lines) deltas.merge(line.stockItemId(), line.quantity(), BigDecimal::add);
     }
 
-    public void delete(UUID id) { repo.deleteById(id); }
+    @Transactional
+    public void delete(UUID id) {
+        repo.findById(id).ifPresent(p -> {
+            rollups.addPurchase(p.getDate(), p.getTotalCost().negate());
+            repo.delete(p);
+        });
+    }
 }
\ No newline at end of file
@@ -17,4 +17,18 @@ public class PurchaseDtos {
             @NotNull LocalDate date,
             @NotEmpty List<@Valid Item> items
     ) {}
+
+    // List filters; null means "any"
+    public record Filter(LocalDate from, LocalDate to, UUID supplierId) {}
+
+    // index is the document's position in the request; id is set on success, error on failure
+    public record BulkResult(int index, UUID id, String error) {}
+
+    public record BulkResponse(int created, int failed, List<BulkResult> results) {}
+
+    public record SupplierSpend(UUID supplierId, String name, Long purchases, BigDecimal spend) {}
+
+    // One row per purchase line; purchase columns repeat on each line
+    public record ExportLine(UUID purchaseId, LocalDate date, UUID supplierId, BigDecimal totalCost,
+                             UUID stockItemId, BigDecimal quantity, BigDecimal price) {}
 }
\ No newline at end of file
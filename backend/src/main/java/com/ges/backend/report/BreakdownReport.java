@@ -0,0 +1,35 @@
+package com.ges.backend.report;
+
+import com.ges.backend.stock.Category;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+public record BreakdownReport(
+        String from,
+        String to,
+        List<CategoryLine> categories,
+        List<ItemLine> items,
+        CategoryLine total
+) {
+    // category is null for usages or purchases of stock items that have since been deleted
+    public record CategoryLine(
+            Category category,
+            BigDecimal purchases,
+            BigDecimal usageQuantity,
+            BigDecimal usageValue,
+            BigDecimal stockValue
+    ) {}
+
+    public record ItemLine(
+            UUID stockItemId,
+            String name,
+            Category category,
+            BigDecimal purchasedQuantity,
+            BigDecimal purchases,
+            BigDecimal usageQuantity,
+            BigDecimal usageValue,
+            BigDecimal stockValue
+    ) {}
+}
@@ -0,0 +1,15 @@
+package com.ges.backend.report;
+
+import java.math.BigDecimal;
+
+// Month-scoped part of a MonthlyReport; stock value and low-stock count are read live
+public record MonthTotals(
+        BigDecimal purchases,
+        BigDecimal expenses,
+        long usageCount,
+        BigDecimal salesValue
+) {
+    static MonthTotals of(MonthlyRollup rollup) {
+        return new MonthTotals(rollup.getPurchases(), rollup.getExpenses(), rollup.getUsageCount(), rollup.getSalesValue());
+    }
+}
@@ -0,0 +1,49 @@
+package com.ges.backend.report;
+
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+import java.math.BigDecimal;
+
+// Running per-month totals maintained alongside purchase, expense and usage writes.
+// Sales value is priced at the stock item's unit price when the usage was written;
+// a rebuild revalues the month at current prices.
+@Entity
+@Table(name = "monthly_rollup")
+public class MonthlyRollup implements Persistable<String> {
+    @Id
+    @Column(name = "rollup_month", length = 7)
+    private String month; // yyyy-MM
+
+    @Column(nullable = false)
+    private BigDecimal purchases = BigDecimal.ZERO;
+    @Column(nullable = false)
+    private BigDecimal expenses = BigDecimal.ZERO;
+    @Column(nullable = false)
+    private long usageCount;
+    @Column(nullable = false, precision = 38, scale = 4)
+    private BigDecimal salesValue = BigDecimal.ZERO; // quantity * unitPrice, kept unrounded
+
+    // Assigned ids would make save() merge; seeding must insert so a concurrent seed fails instead of overwriting
+    @Transient
+    private boolean persisted;
+
+    @PostLoad
+    @PostPersist
+    void markPersisted() { persisted = true; }
+
+    @Override
+    public String getId() { return month; }
+    @Override
+    public boolean isNew() { return !persisted; }
+
+    public String getMonth() { return month; }
+    public void setMonth(String month) { this.month = month; }
+    public BigDecimal getPurchases() { return purchases; }
+    public void setPurchases(BigDecimal purchases) { this.purchases = purchases; }
+    public BigDecimal getExpenses() { return expenses; }
+    public void setExpenses(BigDecimal expenses) { this.expenses = expenses; }
+    public long getUsageCount() { return usageCount; }
+    public void setUsageCount(long usageCount) { this.usageCount = usageCount; }
+    public BigDecimal getSalesValue() { return salesValue; }
+    public void setSalesValue(BigDecimal salesValue) { this.salesValue = salesValue; }
+}
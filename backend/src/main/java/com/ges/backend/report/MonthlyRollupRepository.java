@@ -0,0 +1,35 @@
+package com.ges.backend.report;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+public interface MonthlyRollupRepository extends JpaRepository<MonthlyRollup, String> {
+    // yyyy-MM keys sort chronologically as strings
+    List<MonthlyRollup> findByMonthBetween(String from, String to);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select r from MonthlyRollup r where r.month = :month")
+    Optional<MonthlyRollup> findForUpdate(@Param("month") String month);
+
+    @Modifying(flushAutomatically = true)
+    @Query("""
+            update MonthlyRollup r set
+                r.purchases = r.purchases + :purchases,
+                r.expenses = r.expenses + :expenses,
+                r.usageCount = r.usageCount + :usageCount,
+                r.salesValue = r.salesValue + :salesValue
+            where r.month = :month""")
+    int addTo(@Param("month") String month,
+              @Param("purchases") BigDecimal purchases,
+              @Param("expenses") BigDecimal expenses,
+              @Param("usageCount") long usageCount,
+              @Param("salesValue") BigDecimal salesValue);
+}
@@ -0,0 +1,182 @@
+package com.ges.backend.report;
+
+import com.ges.backend.common.MonthlyTotal;
+import com.ges.backend.expense.ExpenseRepository;
+import com.ges.backend.purchase.PurchaseRepository;
+import com.ges.backend.usage.UsageRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.math.BigDecimal.ZERO;
+
+@Service
+public class MonthlyRollupService {
+    private final MonthlyRollupRepository repo;
+    private final PurchaseRepository purchaseRepo;
+    private final ExpenseRepository expenseRepo;
+    private final UsageRepository usageRepo;
+    private final ReportCache cache;
+    private final TransactionTemplate tx;
+    private final TransactionTemplate newTx;
+    private final int rebuildParallelism;
+
+    public MonthlyRollupService(MonthlyRollupRepository repo, PurchaseRepository purchaseRepo, ExpenseRepository expenseRepo,
+                                UsageRepository usageRepo, ReportCache cache, PlatformTransactionManager txManager,
+                                @Value("${reports.rollup.rebuild-parallelism:4}") int rebuildParallelism) {
+        this.repo = repo;
+        this.purchaseRepo = purchaseRepo;
+        this.expenseRepo = expenseRepo;
+        this.usageRepo = usageRepo;
+        this.cache = cache;
+        this.tx = new TransactionTemplate(txManager);
+        this.newTx = new TransactionTemplate(txManager);
+        this.newTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.rebuildParallelism = rebuildParallelism;
+    }
+
+    // The add* methods are called from the writing service's transaction so the rollup
+    // commits or rolls back together with the purchase, expense or usage it describes.
+    public void addPurchase(LocalDate date, BigDecimal amount) { apply(date, amount, ZERO, 0, ZERO); }
+
+    public void addExpense(LocalDate date, BigDecimal amount) { apply(date, ZERO, amount, 0, ZERO); }
+
+    public void addUsage(LocalDate date, long count, BigDecimal salesValue) { apply(date, ZERO, ZERO, count, salesValue); }
+
+    public MonthlyRollup current(YearMonth ym) {
+        return repo.findById(ym.toString()).orElseGet(() -> seed(ym));
+    }
+
+    // Stored rows where they exist. Months without one are computed with one grouped query per table over
+    // their span and not persisted, so reading a long range writes nothing
+    public Map<YearMonth, MonthTotals> between(YearMonth from, YearMonth to) {
+        var totals = new TreeMap<YearMonth, MonthTotals>();
+        repo.findByMonthBetween(from.toString(), to.toString()).forEach(r -> totals.put(YearMonth.parse(r.getMonth()), MonthTotals.of(r)));
+        var missing = new TreeSet<YearMonth>();
+        for (var ym = from; !ym.isAfter(to); ym = ym.plusMonths(1)) if (!totals.containsKey(ym)) missing.add(ym);
+        if (missing.isEmpty()) return totals;
+
+        var start = missing.first().atDay(1);
+        var end = missing.last().atEndOfMonth();
+        var purchases = byMonth(purchaseRepo.sumTotalCostByMonth(start, end));
+        var expenses = byMonth(expenseRepo.sumAmountByMonth(start, end));
+        var usages = byMonth(usageRepo.sumSalesValueByMonth(start, end));
+        for (var ym : missing) {
+            var u = usages.get(ym);
+            totals.put(ym, new MonthTotals(amount(purchases.get(ym)), amount(expenses.get(ym)),
+                    u != null ? u.count() : 0, amount(u)));
+        }
+        return totals;
+    }
+
+    public int rebuild() {
+        var months = new TreeSet<YearMonth>();
+        addRange(months, purchaseRepo.findEarliestDate(), purchaseRepo.findLatestDate());
+        addRange(months, expenseRepo.findEarliestDate(), expenseRepo.findLatestDate());
+        addRange(months, usageRepo.findEarliestDate(), usageRepo.findLatestDate());
+        repo.findAll().forEach(r -> months.add(YearMonth.parse(r.getMonth())));
+
+        List<ForkJoinTask<?>> tasks = months.stream()
+                .<ForkJoinTask<?>>map(ym -> ForkJoinTask.adapt(() -> rebuildMonth(ym)))
+                .toList();
+        var pool = new ForkJoinPool(rebuildParallelism);
+        try {
+            pool.submit(() -> ForkJoinTask.invokeAll(tasks)).join();
+        } finally {
+            pool.shutdown();
+        }
+        return months.size();
+    }
+
+    private void apply(LocalDate date, BigDecimal purchases, BigDecimal expenses, long usageCount, BigDecimal salesValue) {
+        var ym = YearMonth.from(date);
+        if (repo.addTo(ym.toString(), purchases, expenses, usageCount, salesValue) == 0) {
+            seed(ym);
+            repo.addTo(ym.toString(), purchases, expenses, usageCount, salesValue);
+        }
+        invalidateAfterCommit(ym);
+    }
+
+    private void invalidateAfterCommit(YearMonth ym) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            cache.invalidate(ym);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() { cache.invalidate(ym); }
+        });
+    }
+
+    // First touch of a month computes it from committed rows in its own transaction, so the
+    // caller's pending write is applied exactly once on top of the seeded totals.
+    private MonthlyRollup seed(YearMonth ym) {
+        try {
+            return newTx.execute(s -> {
+                var row = new MonthlyRollup();
+                row.setMonth(ym.toString());
+                fill(row, ym);
+                return repo.saveAndFlush(row);
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Another request seeded the month first
+            return repo.findById(ym.toString()).orElseThrow(() -> e);
+        }
+    }
+
+    // Locks the row before reading the raw tables so concurrent deltas either land before
+    // the recompute (and are included) or block until it commits.
+    private void rebuildMonth(YearMonth ym) {
+        tx.executeWithoutResult(s -> {
+            var row = repo.findForUpdate(ym.toString()).orElseGet(() -> {
+                var r = new MonthlyRollup();
+                r.setMonth(ym.toString());
+                return r;
+            });
+            fill(row, ym);
+            repo.save(row);
+        });
+        cache.invalidate(ym);
+    }
+
+    private void fill(MonthlyRollup row, YearMonth ym) {
+        LocalDate from = ym.atDay(1);
+        LocalDate to = ym.atEndOfMonth();
+        row.setPurchases(purchaseRepo.sumTotalCostBetween(from, to));
+        row.setExpenses(expenseRepo.sumAmountBetween(from, to));
+        row.setUsageCount(usageRepo.countByDateBetween(from, to));
+        row.setSalesValue(usageRepo.sumSalesValueBetween(from, to));
+    }
+
+    private static Map<YearMonth, MonthlyTotal> byMonth(List<MonthlyTotal> rows) {
+        return rows.stream().collect(Collectors.toMap(MonthlyTotal::yearMonth, Function.identity()));
+    }
+
+    private static BigDecimal amount(MonthlyTotal row) {
+        return row != null ? row.amount() : ZERO;
+    }
+
+    private static void addRange(TreeSet<YearMonth> months, LocalDate earliest, LocalDate latest) {
+        if (earliest == null || latest == null) return;
+        Stream.iterate(YearMonth.from(earliest), ym -> !ym.isAfter(YearMonth.from(latest)), ym -> ym.plusMonths(1))
+                .forEach(months::add);
+    }
+}
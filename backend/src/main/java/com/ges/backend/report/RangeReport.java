@@ -0,0 +1,10 @@
+package com.ges.backend.report;
+
+import java.util.List;
+
+public record RangeReport(
+        String from,
+        String to,
+        List<MonthlyReport> months,
+        MonthlyReport total
+) {}
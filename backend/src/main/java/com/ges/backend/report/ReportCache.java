@@ -0,0 +1,67 @@
+package com.ges.backend.report;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.YearMonth;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+// Bounded LRU of month totals. Writers invalidate the month they touch after commit.
+@Component
+public class ReportCache {
+    public record Stats(long hits, long misses, long evictions, long invalidations, int size, int maxEntries) {}
+
+    private final int maxEntries;
+    private final Map<YearMonth, MonthTotals> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public ReportCache(@Value("${reports.cache.max-entries:120}") int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<YearMonth, MonthTotals> eldest) {
+                if (size() <= ReportCache.this.maxEntries) return false;
+                evictions.incrementAndGet();
+                return true;
+            }
+        };
+    }
+
+    public MonthTotals get(YearMonth month, Function<YearMonth, MonthTotals> loader) {
+        long epoch;
+        synchronized (entries) {
+            var cached = entries.get(month);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+            epoch = invalidations.get();
+        }
+        misses.incrementAndGet();
+        var loaded = loader.apply(month);
+        synchronized (entries) {
+            // Skip the put if anything was invalidated while loading; the value may predate that write
+            if (invalidations.get() == epoch) entries.put(month, loaded);
+        }
+        return loaded;
+    }
+
+    public void invalidate(YearMonth month) {
+        synchronized (entries) {
+            invalidations.incrementAndGet();
+            entries.remove(month);
+        }
+    }
+
+    public Stats stats() {
+        synchronized (entries) {
+            return new Stats(hits.get(), misses.get(), evictions.get(), invalidations.get(), entries.size(), maxEntries);
+        }
+    }
+}
@@ -2,18 +2,37 @@ package com.ges.backend.report;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.net.URI;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.UUID;
+
 @RestController
 @RequestMapping("/api/reports")
 @Tag(name = "Reports", description = "Aggregated reports such as monthly summaries")
 public class ReportController {
     private final ReportService service;
-    public ReportController(ReportService service) { this.service = service; }
+    private final MonthlyRollupService rollups;
+    private final ReportJobService jobs;
+
+    public ReportController(ReportService service, MonthlyRollupService rollups, ReportJobService jobs) {
+        this.service = service;
+        this.rollups = rollups;
+        this.jobs = jobs;
+    }
 
     @GetMapping("/monthly")
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
@@ -21,4 +40,58 @@ public class ReportController {
     public MonthlyReport monthly(@RequestParam(required = false) String month) {
         return service.monthly(month);
     }
+
+    @GetMapping("/range")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
+    @Operation(summary = "Range report", description = "Returns one monthly report per month from 'from' to 'to' (yyyy-MM, inclusive) plus a grand total, read from the monthly rollup rows (months without one are computed with one grouped query per table). Spans at most 120 months.")
+    public RangeReport range(@RequestParam String from, @RequestParam String to) {
+        return service.range(from, to);
+    }
+
+    @GetMapping("/breakdown")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
+    @Operation(summary = "Breakdown report", description = "Purchases, usage quantity, usage value and current stock value per category and per stock item for the dates from..to (yyyy-MM-dd, inclusive), computed with grouped queries.")
+    public BreakdownReport breakdown(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                     @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return service.breakdown(from, to);
+    }
+
+    @GetMapping("/top")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
+    @Operation(summary = "Top-N rankings", description = "Top n stock items by consumed quantity or value (by=quantity|value) and top n suppliers by spend for the dates from..to (yyyy-MM-dd, inclusive). n is at most 100.")
+    public TopReport top(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                         @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                         @RequestParam(defaultValue = "10") int n,
+                         @RequestParam(defaultValue = "quantity") String by) {
+        return service.top(from, to, n, by);
+    }
+
+    @PostMapping("/jobs")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
+    @Operation(summary = "Submit report job", description = "Queues a heavy report (a multi-year range, or a breakdown with dates as yyyy-MM-dd) and returns its job id immediately. Returns 503 when the job queue is full.")
+    public ResponseEntity<ReportJob> submitJob(@RequestBody @Valid ReportJobRequest body, Authentication auth) {
+        var job = jobs.submit(body, auth.getName());
+        return ResponseEntity.accepted().location(URI.create("/api/reports/jobs/" + job.getId())).body(job);
+    }
+
+    @GetMapping("/jobs/{id}")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
+    @Operation(summary = "Report job status", description = "Returns the job status, and the report once it has succeeded. Only the user who submitted the job can read it")
+    public ReportJob job(@PathVariable UUID id, Authentication auth) {
+        return jobs.get(id, auth.getName());
+    }
+
+    @GetMapping("/cache")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Report cache statistics", description = "Hit, miss, eviction and invalidation counters for the monthly report cache")
+    public ReportCache.Stats cacheStats() {
+        return service.cacheStats();
+    }
+
+    @PostMapping("/rollups/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Rebuild monthly rollups", description = "Recomputes every monthly rollup from purchases, expenses and usages, one month per task. Use for backfill and repair.")
+    public Map<String, Integer> rebuildRollups() {
+        return Map.of("months", rollups.rebuild());
+    }
 }
@@ -0,0 +1,59 @@
+package com.ges.backend.report;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.Instant;
+import java.util.UUID;
+
+// State of a submitted report job; written by the worker thread, read by pollers
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ReportJob {
+    public enum Status { QUEUED, RUNNING, SUCCEEDED, FAILED }
+
+    private final UUID id;
+    private final ReportJobType type;
+    private final Instant submittedAt;
+    private final String submittedBy;
+    private volatile Status status = Status.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile Object result;
+    private volatile String error;
+
+    public ReportJob(UUID id, ReportJobType type, Instant submittedAt, String submittedBy) {
+        this.id = id;
+        this.type = type;
+        this.submittedAt = submittedAt;
+        this.submittedBy = submittedBy;
+    }
+
+    void started() {
+        startedAt = Instant.now();
+        status = Status.RUNNING;
+    }
+
+    void succeeded(Object result) {
+        this.result = result;
+        finishedAt = Instant.now();
+        status = Status.SUCCEEDED;
+    }
+
+    void failed(String error) {
+        this.error = error;
+        finishedAt = Instant.now();
+        status = Status.FAILED;
+    }
+
+    boolean isSubmittedBy(String user) { return submittedBy.equals(user); }
+
+    public boolean isFinished() { return status == Status.SUCCEEDED || status == Status.FAILED; }
+
+    public UUID getId() { return id; }
+    public ReportJobType getType() { return type; }
+    public Instant getSubmittedAt() { return submittedAt; }
+    public Status getStatus() { return status; }
+    public Instant getStartedAt() { return startedAt; }
+    public Instant getFinishedAt() { return finishedAt; }
+    public Object getResult() { return result; }
+    public String getError() { return error; }
+}
@@ -0,0 +1,10 @@
+package com.ges.backend.report;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+
+public record ReportJobRequest(
+        @NotNull ReportJobType type,
+        @NotBlank String from,
+        @NotBlank String to
+) {}
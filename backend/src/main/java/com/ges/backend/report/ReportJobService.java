@@ -0,0 +1,115 @@
+package com.ges.backend.report;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.NOT_FOUND;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+@Service
+public class ReportJobService {
+    private final ReportService reports;
+    private final Executor jobExecutor;
+    private final Duration retention;
+    private final Map<UUID, ReportJob> jobs = new ConcurrentHashMap<>();
+
+    public ReportJobService(ReportService reports, @Qualifier("reportJobExecutor") Executor jobExecutor,
+                            @Value("${reports.jobs.retention:PT1H}") Duration retention) {
+        this.reports = reports;
+        this.jobExecutor = jobExecutor;
+        this.retention = retention;
+    }
+
+    public ReportJob submit(ReportJobRequest request, String submittedBy) {
+        // Bad parameters are rejected up front rather than surfacing later as a failed job
+        Supplier<Object> work = switch (request.type()) {
+            case RANGE -> {
+                var from = month(request.from());
+                var to = month(request.to());
+                ReportService.checkRange(from, to);
+                yield () -> reports.range(from.toString(), to.toString());
+            }
+            case BREAKDOWN -> {
+                var from = date(request.from());
+                var to = date(request.to());
+                if (from.isAfter(to)) throw new ResponseStatusException(BAD_REQUEST, "'from' must not be after 'to'");
+                yield () -> reports.breakdown(from, to);
+            }
+        };
+
+        var job = new ReportJob(UUID.randomUUID(), request.type(), Instant.now(), submittedBy);
+        jobs.put(job.getId(), job);
+        try {
+            jobExecutor.execute(() -> run(job, work));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw new ResponseStatusException(SERVICE_UNAVAILABLE, "Report job queue is full, try again later");
+        }
+        return job;
+    }
+
+    // Only the submitter can read a job; anyone else gets the same 404 as for an unknown id
+    public ReportJob get(UUID id, String user) {
+        var job = jobs.get(id);
+        if (job != null && isExpired(job, Instant.now().minus(retention))) {
+            jobs.remove(id, job);
+            job = null;
+        }
+        if (job == null || !job.isSubmittedBy(user)) throw new ResponseStatusException(NOT_FOUND, "Report job not found");
+        return job;
+    }
+
+    private void run(ReportJob job, Supplier<Object> work) {
+        job.started();
+        try {
+            job.succeeded(work.get());
+        } catch (ResponseStatusException e) {
+            job.failed(e.getReason());
+        } catch (RuntimeException e) {
+            job.failed(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        }
+    }
+
+    // Finished jobs are kept for the retention window so clients can collect their result, then dropped
+    @Scheduled(fixedDelayString = "${reports.jobs.evict-interval:PT5M}")
+    public void evictExpired() {
+        var cutoff = Instant.now().minus(retention);
+        jobs.values().removeIf(j -> isExpired(j, cutoff));
+    }
+
+    private static boolean isExpired(ReportJob job, Instant cutoff) {
+        return job.isFinished() && job.getFinishedAt().isBefore(cutoff);
+    }
+
+    private static YearMonth month(String value) {
+        try {
+            return YearMonth.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new ResponseStatusException(BAD_REQUEST, "Invalid month '" + value + "', expected yyyy-MM");
+        }
+    }
+
+    private static LocalDate date(String value) {
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new ResponseStatusException(BAD_REQUEST, "Invalid date '" + value + "', expected yyyy-MM-dd");
+        }
+    }
+}
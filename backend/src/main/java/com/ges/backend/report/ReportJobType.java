@@ -0,0 +1,6 @@
+package com.ges.backend.report;
+
+public enum ReportJobType {
+    RANGE,
+    BREAKDOWN
+}
@@ -1,62 +1,82 @@
 package com.ges.backend.report;
 
-import com.ges.backend.expense.ExpenseRepository;
+import com.ges.backend.common.ItemTotal;
+import com.ges.backend.common.SingleFlight;
 import com.ges.backend.purchase.PurchaseRepository;
+import com.ges.backend.stock.Category;
 import com.ges.backend.stock.StockItemRepository;
+import com.ges.backend.stock.StockValuationService;
 import com.ges.backend.usage.UsageRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.YearMonth;
-import java.util.stream.StreamSupport;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
 
 @Service
 public class ReportService {
+    static final int MAX_TOP = 100;
+    static final int MAX_RANGE_MONTHS = 120;
+
     private final StockItemRepository stockRepo;
     private final PurchaseRepository purchaseRepo;
-    private final ExpenseRepository expenseRepo;
     private final UsageRepository usageRepo;
+    private final MonthlyRollupService rollups;
+    private final StockValuationService valuation;
+    private final ReportCache cache;
+    private final Executor reportExecutor;
+    private final SingleFlight<YearMonth, MonthlyReport> monthlyFlights = new SingleFlight<>();
+    private final SingleFlight<List<YearMonth>, RangeReport> rangeFlights = new SingleFlight<>();
 
-    public ReportService(StockItemRepository stockRepo, PurchaseRepository purchaseRepo, ExpenseRepository expenseRepo, UsageRepository usageRepo) {
+    public ReportService(StockItemRepository stockRepo, PurchaseRepository purchaseRepo,
+                         UsageRepository usageRepo, MonthlyRollupService rollups, StockValuationService valuation,
+                         ReportCache cache, @Qualifier("reportExecutor") Executor reportExecutor) {
         this.stockRepo = stockRepo;
         this.purchaseRepo = purchaseRepo;
-        this.expenseRepo = expenseRepo;
         this.usageRepo = usageRepo;
+        this.rollups = rollups;
+        this.valuation = valuation;
+        this.cache = cache;
+        this.reportExecutor = reportExecutor;
     }
 
     public MonthlyReport monthly(String monthStr) {
         YearMonth ym = monthStr != null ? YearMonth.parse(monthStr) : YearMonth.now();
+        // Managers opening the same month at once share one computation
+        return monthlyFlights.execute(ym, () -> computeMonthly(ym));
+    }
 
-        var totalStockValue = StreamSupport.stream(stockRepo.findAll().spliterator(), false)
-                .map(si -> si.getUnitPrice().multiply(si.getQuantity()))
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        var purchases = StreamSupport.stream(purchaseRepo.findAll().spliterator(), false)
-                .filter(p -> YearMonth.from(p.getDate()).equals(ym))
-                .map(p -> p.getTotalCost() != null ? p.getTotalCost() : BigDecimal.ZERO)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        var expenses = StreamSupport.stream(expenseRepo.findAll().spliterator(), false)
-                .filter(e -> YearMonth.from(e.getDate()).equals(ym))
-                .map(e -> e.getAmount() != null ? e.getAmount() : BigDecimal.ZERO)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        // Count usage records for the month
-        int usageCount = (int) StreamSupport.stream(usageRepo.findAll().spliterator(), false)
-                .filter(u -> YearMonth.from(u.getDate()).equals(ym))
-                .count();
+    private MonthlyReport computeMonthly(YearMonth ym) {
+        var totalStockValue = valuation.current().total();
 
-        var estimatedSalesValue = StreamSupport.stream(usageRepo.findAll().spliterator(), false)
-                .filter(u -> YearMonth.from(u.getDate()).equals(ym))
-                .map(u -> stockRepo.findById(u.getStockItemId())
-                        .map(si -> si.getUnitPrice().multiply(u.getQuantityUsed()))
-                        .orElse(BigDecimal.ZERO))
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        // Purchases, expenses, usage count and sales value come from the month's rollup row, cached per month
+        var totals = cache.get(ym, m -> MonthTotals.of(rollups.current(m)));
+        var purchases = totals.purchases();
+        var expenses = totals.expenses();
+        int usageCount = (int) totals.usageCount();
+        var estimatedSalesValue = totals.salesValue();
 
         // Count low stock items
-        int lowStockCount = (int) StreamSupport.stream(stockRepo.findAll().spliterator(), false)
-                .filter(si -> si.getQuantity().compareTo(si.getReorderLevel()) <= 0)
-                .count();
+        int lowStockCount = (int) stockRepo.countByLowStockTrue();
 
         var profit = estimatedSalesValue.subtract(purchases.add(expenses));
 
@@ -71,4 +91,132 @@ public class ReportService {
                 profit
         );
     }
-}
\ No newline at end of file
+
+    public RangeReport range(String fromStr, String toStr) {
+        YearMonth fromMonth = YearMonth.parse(fromStr);
+        YearMonth toMonth = YearMonth.parse(toStr);
+        checkRange(fromMonth, toMonth);
+        return rangeFlights.execute(List.of(fromMonth, toMonth), () -> computeRange(fromMonth, toMonth));
+    }
+
+    static void checkRange(YearMonth from, YearMonth to) {
+        if (from.isAfter(to)) throw new ResponseStatusException(BAD_REQUEST, "'from' must not be after 'to'");
+        if (from.until(to, ChronoUnit.MONTHS) >= MAX_RANGE_MONTHS) {
+            throw new ResponseStatusException(BAD_REQUEST, "A range covers at most " + MAX_RANGE_MONTHS + " months");
+        }
+    }
+
+    private RangeReport computeRange(YearMonth fromMonth, YearMonth toMonth) {
+        // Rollup rows as in the monthly report; months without one are summed from the tables at the same prices
+        var rowsF = async(() -> rollups.between(fromMonth, toMonth));
+        var stockValueF = async(() -> valuation.current().total());
+        var lowStockF = async(stockRepo::countByLowStockTrue);
+
+        var rows = join(rowsF);
+        var totalStockValue = join(stockValueF);
+        int lowStockCount = join(lowStockF).intValue();
+
+        var months = new ArrayList<MonthlyReport>();
+        for (var row : rows.entrySet()) {
+            var t = row.getValue();
+            months.add(new MonthlyReport(row.getKey().toString(), totalStockValue, t.purchases(), t.expenses(), (int) t.usageCount(),
+                    lowStockCount, t.salesValue(), t.salesValue().subtract(t.purchases().add(t.expenses()))));
+        }
+
+        var purchaseTotal = sum(months, MonthlyReport::purchases);
+        var expenseTotal = sum(months, MonthlyReport::expenses);
+        var salesTotal = sum(months, MonthlyReport::estimatedSalesValue);
+        var total = new MonthlyReport(fromMonth + ".." + toMonth, totalStockValue, purchaseTotal, expenseTotal,
+                months.stream().mapToInt(MonthlyReport::usageCount).sum(), lowStockCount,
+                salesTotal, salesTotal.subtract(purchaseTotal.add(expenseTotal)));
+        return new RangeReport(fromMonth.toString(), toMonth.toString(), months, total);
+    }
+
+    public BreakdownReport breakdown(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) throw new ResponseStatusException(BAD_REQUEST, "'from' must not be after 'to'");
+
+        // Purchases and usages are grouped per stock item in the database, so one row per item comes back
+        var purchasesF = async(() -> byItem(purchaseRepo.sumLinesByItem(from, to)));
+        var usagesF = async(() -> byItem(usageRepo.sumUsageByItem(from, to)));
+        var stockF = async(stockRepo::findItemValues);
+
+        var purchases = join(purchasesF);
+        var usages = join(usagesF);
+        var stock = join(stockF);
+
+        var items = new ArrayList<BreakdownReport.ItemLine>();
+        var unknown = new HashSet<UUID>(purchases.keySet());
+        unknown.addAll(usages.keySet());
+        for (var s : stock) {
+            unknown.remove(s.id());
+            items.add(itemLine(s.id(), s.name(), s.category(), s.value(), purchases.get(s.id()), usages.get(s.id())));
+        }
+        // Items deleted since but still referenced in the range
+        for (var id : unknown) items.add(itemLine(id, null, null, BigDecimal.ZERO, purchases.get(id), usages.get(id)));
+        items.sort(Comparator.comparing(BreakdownReport.ItemLine::category, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(BreakdownReport.ItemLine::name, Comparator.nullsLast(Comparator.naturalOrder())));
+
+        var byCategory = new LinkedHashMap<Category, BreakdownReport.CategoryLine>();
+        for (var i : items) {
+            var line = new BreakdownReport.CategoryLine(i.category(), i.purchases(), i.usageQuantity(), i.usageValue(), i.stockValue());
+            byCategory.merge(i.category(), line, ReportService::add);
+        }
+        var categories = new ArrayList<>(byCategory.values());
+        var total = categories.stream()
+                .reduce(new BreakdownReport.CategoryLine(null, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO), ReportService::add);
+        return new BreakdownReport(from.toString(), to.toString(), categories, items, total);
+    }
+
+    public TopReport top(LocalDate from, LocalDate to, int n, String by) {
+        if (from.isAfter(to)) throw new ResponseStatusException(BAD_REQUEST, "'from' must not be after 'to'");
+        if (n < 1 || n > MAX_TOP) throw new ResponseStatusException(BAD_REQUEST, "n must be between 1 and " + MAX_TOP);
+        boolean byValue = switch (by) {
+            case "quantity" -> false;
+            case "value" -> true;
+            default -> throw new ResponseStatusException(BAD_REQUEST, "by must be 'quantity' or 'value'");
+        };
+
+        var limit = Limit.of(n);
+        var itemsF = async(() -> byValue ? usageRepo.topByValue(from, to, limit) : usageRepo.topByQuantity(from, to, limit));
+        var suppliersF = async(() -> purchaseRepo.topSuppliersBySpend(from, to, limit));
+        return new TopReport(from.toString(), to.toString(), by, n, join(itemsF), join(suppliersF));
+    }
+
+    public ReportCache.Stats cacheStats() { return cache.stats(); }
+
+    private <T> CompletableFuture<T> async(Supplier<T> query) {
+        return CompletableFuture.supplyAsync(query, reportExecutor);
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+    }
+
+    private static Map<UUID, ItemTotal> byItem(List<ItemTotal> rows) {
+        return rows.stream().collect(Collectors.toMap(ItemTotal::stockItemId, Function.identity()));
+    }
+
+    private static BreakdownReport.ItemLine itemLine(UUID id, String name, Category category, BigDecimal stockValue,
+                                                     ItemTotal purchased, ItemTotal used) {
+        return new BreakdownReport.ItemLine(id, name, category,
+                purchased != null ? purchased.quantity() : BigDecimal.ZERO,
+                purchased != null ? purchased.value() : BigDecimal.ZERO,
+                used != null ? used.quantity() : BigDecimal.ZERO,
+                used != null ? used.value() : BigDecimal.ZERO,
+                stockValue != null ? stockValue : BigDecimal.ZERO);
+    }
+
+    private static BreakdownReport.CategoryLine add(BreakdownReport.CategoryLine a, BreakdownReport.CategoryLine b) {
+        return new BreakdownReport.CategoryLine(a.category(), a.purchases().add(b.purchases()),
+                a.usageQuantity().add(b.usageQuantity()), a.usageValue().add(b.usageValue()), a.stockValue().add(b.stockValue()));
+    }
+
+    private static BigDecimal sum(List<MonthlyReport> months, Function<MonthlyReport, BigDecimal> field) {
+        return months.stream().map(field).reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+}
@@ -0,0 +1,15 @@
+package com.ges.backend.report;
+
+import com.ges.backend.purchase.dto.PurchaseDtos;
+import com.ges.backend.usage.dto.UsageDtos;
+
+import java.util.List;
+
+public record TopReport(
+        String from,
+        String to,
+        String by,
+        int n,
+        List<UsageDtos.ItemConsumption> items,
+        List<PurchaseDtos.SupplierSpend> suppliers
+) {}
@@ -0,0 +1,5 @@
+package com.ges.backend.stock;
+
+public enum MovementSource {
+    PURCHASE, USAGE, ADJUSTMENT
+}
@@ -1,16 +1,21 @@
 package com.ges.backend.stock;
 
+import com.ges.backend.common.TimeOrderedUuid;
 import jakarta.persistence.*;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
+@Table(indexes = @Index(name = "idx_stock_item_low_stock", columnList = "lowStock, name"))
 public class StockItem {
     @Id
-    @GeneratedValue
+    @TimeOrderedUuid
     private UUID id;
 
+    @Version
+    private long version;
+
     @Column(nullable = false)
     private String name;
 
@@ -29,6 +34,10 @@ public class StockItem {
 
     private BigDecimal reorderLevel;
 
+    // Derived from quantity and reorderLevel on every write so low-stock lookups hit the index
+    @Column(nullable = false)
+    private boolean lowStock;
+
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
@@ -36,16 +45,24 @@ public class StockItem {
     void prePersist() {
         createdAt = LocalDateTime.now();
         updatedAt = createdAt;
+        lowStock = computeLowStock();
     }
 
     @PreUpdate
     void preUpdate() {
         updatedAt = LocalDateTime.now();
+        lowStock = computeLowStock();
+    }
+
+    // Items without a reorder level are never low
+    private boolean computeLowStock() {
+        return reorderLevel != null && quantity != null && quantity.compareTo(reorderLevel) <= 0;
     }
 
     // getters and setters
     public UUID getId() { return id; }
     public void setId(UUID id) { this.id = id; }
+    public long getVersion() { return version; }
     public String getName() { return name; }
     public void setName(String name) { this.name = name; }
     public Category getCategory() { return category; }
@@ -58,6 +75,7 @@ public class StockItem {
     public void setUnitPrice(BigDecimal unitPrice) { this.unitPrice = unitPrice; }
     public BigDecimal getReorderLevel() { return reorderLevel; }
     public void setReorderLevel(BigDecimal reorderLevel) { this.reorderLevel = reorderLevel; }
+    public boolean isLowStock() { return lowStock; }
     public LocalDateTime getCreatedAt() { return createdAt; }
     public LocalDateTime getUpdatedAt() { return updatedAt; }
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package com.ges.backend.stock;
 
+import com.ges.backend.common.ETags;
+import com.ges.backend.common.KeysetSlice;
 import com.ges.backend.stock.dto.StockDtos;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -10,9 +12,14 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import org.springframework.data.domain.Page;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
+import java.util.List;
 import java.util.UUID;
 
 @RestController
@@ -20,7 +27,12 @@ import java.util.UUID;
 @Tag(name = "Stocks", description = "Manage stock items including CRUD and search")
 public class StockItemController {
     private final StockItemService service;
-    public StockItemController(StockItemService service) { this.service = service; }
+    private final StockLedgerService ledger;
+
+    public StockItemController(StockItemService service, StockLedgerService ledger) {
+        this.service = service;
+        this.ledger = ledger;
+    }
 
     @GetMapping
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER','STAFF')")
@@ -38,6 +50,53 @@ public class StockItemController {
         return service.list(page, size, q);
     }
 
+    @GetMapping(params = "after")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER','STAFF')")
+    @Operation(summary = "List stock items by cursor", description = "Newest first by id; pass the returned 'next' as 'after' for the following slice. Supports 'q' like the paged list.")
+    public KeysetSlice<StockItem> listAfter(@RequestParam String after,
+                                            @RequestParam(defaultValue = "20") int size,
+                                            @RequestParam(required = false) String q) {
+        return service.listAfter(after, size, q);
+    }
+
+    @GetMapping("/low")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER','STAFF')")
+    @Operation(summary = "List low stock items", description = "Paged list of items at or below their reorder level, ordered by name. Items without a reorder level are never listed.")
+    public Page<StockItem> lowStock(@RequestParam(defaultValue = "1") int page,
+                                    @RequestParam(defaultValue = "20") int size) {
+        return service.lowStock(page, size);
+    }
+
+    @GetMapping("/valuation")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
+    @Operation(summary = "Stock valuation", description = "Maintained unitPrice x quantity total, overall and per category")
+    public StockDtos.Valuation valuation() { return service.valuation(); }
+
+    @GetMapping("/valuation/verify")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Verify stock valuation", description = "Compares the maintained valuation against a full recompute over all stock items")
+    public StockDtos.ValuationCheck verifyValuation() { return service.verifyValuation(); }
+
+    @PostMapping("/valuation/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Rebuild stock valuation", description = "Resets the maintained valuation to a full recompute")
+    public StockDtos.Valuation rebuildValuation() { return service.rebuildValuation(); }
+
+    @GetMapping("/levels")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
+    @Operation(summary = "Stock levels on a date", description = "Quantity of every item at the end of the given day, valued at the current unit price")
+    public List<StockDtos.LevelAt> levels(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate on) {
+        return ledger.levelsOn(on);
+    }
+
+    @GetMapping("/{id}/movements")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
+    @Operation(summary = "Stock movements", description = "Ledger of quantity changes for one item, newest first")
+    public Page<StockMovement> movements(@PathVariable UUID id, @RequestParam(defaultValue = "1") int page,
+                                         @RequestParam(defaultValue = "20") int size) {
+        return ledger.movements(id, page, size);
+    }
+
     @GetMapping("/{id}")
     @Operation(summary = "Get stock item", description = "Fetch a stock item by its ID")
     @ApiResponses({
@@ -46,7 +105,10 @@ public class StockItemController {
                 examples = @ExampleObject(value = "{ \"id\": \"uuid\", \"name\": \"Sugar\", \"category\": \"INGREDIENTS\", \"quantity\": 10.5, \"unit\": \"kg\", \"unitPrice\": 2.0, \"reorderLevel\": 5 }"))),
         @ApiResponse(responseCode = "404", description = "Not found")
     })
-    public StockItem get(@PathVariable UUID id) { return service.get(id); }
+    public ResponseEntity<StockItem> get(@PathVariable UUID id) {
+        var entity = service.get(id);
+        return ResponseEntity.ok().eTag(ETags.of(entity.getVersion())).body(entity);
+    }
 
     @PostMapping
     @PreAuthorize("hasRole('ADMIN')")
@@ -60,7 +122,11 @@ public class StockItemController {
     @PutMapping("/{id}")
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
     @Operation(summary = "Update stock item")
-    public StockItem update(@PathVariable UUID id, @RequestBody @Valid StockDtos.Create body) { return service.update(id, body); }
+    public ResponseEntity<StockItem> update(@PathVariable UUID id, @RequestBody @Valid StockDtos.Create body,
+                                            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        var entity = service.update(id, body, ETags.ifMatch(ifMatch));
+        return ResponseEntity.ok().eTag(ETags.of(entity.getVersion())).body(entity);
+    }
 
     @DeleteMapping("/{id}")
     @PreAuthorize("hasRole('ADMIN')")
@@ -1,11 +1,86 @@
 package com.ges.backend.stock;
 
+import com.ges.backend.stock.dto.StockDtos;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
-public interface StockItemRepository extends JpaRepository<StockItem, UUID> {
+public interface StockItemRepository extends JpaRepository<StockItem, UUID>, JpaSpecificationExecutor<StockItem> {
     Page<StockItem> findByNameContainingIgnoreCase(String q, Pageable pageable);
-}
\ No newline at end of file
+
+    Page<StockItem> findByLowStockTrue(Pageable pageable);
+
+    long countByLowStockTrue();
+
+    // Recomputes the flag for rows written before it existed
+    @Modifying
+    @Query("""
+            update StockItem s set s.lowStock =
+                case when s.reorderLevel is not null and s.quantity <= s.reorderLevel then true else false end""")
+    int refreshLowStockFlags();
+
+    // Quantity changes are applied in the database so concurrent writers never overwrite each other;
+    // the version is bumped so a stale If-Match edit of the same item is still rejected.
+    // lowStock is assigned first from the old quantity plus the delta: MySQL evaluates SET left to right.
+    @Modifying(flushAutomatically = true)
+    @Query("""
+            update StockItem s set
+                s.lowStock = case when s.reorderLevel is not null and s.quantity + :delta <= s.reorderLevel then true else false end,
+                s.quantity = s.quantity + :delta,
+                s.version = s.version + 1
+            where s.id = :id""")
+    int addQuantity(@Param("id") UUID id, @Param("delta") BigDecimal delta);
+
+    // Takes stock only if enough is left; 0 rows updated means the item is missing or short
+    @Modifying(flushAutomatically = true)
+    @Query("""
+            update StockItem s set
+                s.lowStock = case when s.reorderLevel is not null and s.quantity - :qty <= s.reorderLevel then true else false end,
+                s.quantity = s.quantity - :qty,
+                s.version = s.version + 1
+            where s.id = :id and s.quantity >= :qty""")
+    int removeQuantity(@Param("id") UUID id, @Param("qty") BigDecimal qty);
+
+    // Locks every row in id order so concurrent multi-item writers cannot deadlock each other
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from StockItem s where s.id in :ids order by s.id")
+    List<StockItem> findAllForUpdate(@Param("ids") Collection<UUID> ids);
+
+    @Query("select s.id from StockItem s where s.id in :ids")
+    Set<UUID> findExistingIds(@Param("ids") Collection<UUID> ids);
+
+    @Query("select new com.ges.backend.stock.dto.StockDtos$Level(s.id, s.category, s.unitPrice, s.quantity) from StockItem s where s.id = :id")
+    Optional<StockDtos.Level> findLevel(@Param("id") UUID id);
+
+    @Query("select coalesce(sum(s.unitPrice * s.quantity), 0) from StockItem s where s.category = :category")
+    BigDecimal sumStockValue(@Param("category") Category category);
+
+    @Query("select new com.ges.backend.stock.dto.StockDtos$ItemValue(s.id, s.name, s.category, s.unitPrice * s.quantity) from StockItem s")
+    List<StockDtos.ItemValue> findItemValues();
+
+    // Items with neither movements nor snapshots, i.e. created before the ledger existed
+    @Query("""
+            select s from StockItem s
+            where not exists (select 1 from StockMovement m where m.stockItemId = s.id)
+              and not exists (select 1 from StockSnapshot ss where ss.stockItemId = s.id)""")
+    List<StockItem> findWithoutLedger();
+
+    static Specification<StockItem> nameContains(String q) {
+        if (q == null || q.isBlank()) return (root, query, cb) -> null;
+        return (root, query, cb) -> cb.like(cb.lower(root.get("name")), "%" + q.toLowerCase() + "%");
+    }
+}
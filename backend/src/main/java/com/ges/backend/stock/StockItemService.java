@@ -1,19 +1,41 @@
 package com.ges.backend.stock;
 
+import com.ges.backend.common.ETags;
+import com.ges.backend.common.Keyset;
+import com.ges.backend.common.KeysetSlice;
 import com.ges.backend.stock.dto.StockDtos;
 import org.springframework.data.domain.Page;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
 import static org.springframework.http.HttpStatus.NOT_FOUND;
 
 @Service
 public class StockItemService {
     private final StockItemRepository repo;
-    public StockItemService(StockItemRepository repo) { this.repo = repo; }
+    private final StockValuationService valuation;
+    private final StockLedgerService ledger;
+
+    public StockItemService(StockItemRepository repo, StockValuationService valuation, StockLedgerService ledger) {
+        this.repo = repo;
+        this.valuation = valuation;
+        this.ledger = ledger;
+    }
 
     public Page<StockItem> list(int page, int size, String q) {
         var pageable = PageRequest.of(Math.max(page-1,0), size);
@@ -21,10 +43,23 @@ public class StockItemService {
         return repo.findAll(pageable);
     }
 
+    public KeysetSlice<StockItem> listAfter(String after, int size, String q) {
+        return Keyset.byId(repo, StockItemRepository.nameContains(q), after, size, StockItem::getId);
+    }
+
+    public Page<StockItem> lowStock(int page, int size) {
+        return repo.findByLowStockTrue(PageRequest.of(Math.max(page-1,0), size, Sort.by("name")));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void refreshLowStockFlags() { repo.refreshLowStockFlags(); }
+
     public StockItem get(UUID id) {
         return repo.findById(id).orElseThrow(() -> new ResponseStatusException(NOT_FOUND, "Stock item not found"));
     }
 
+    @Transactional
     public StockItem create(StockDtos.Create dto) {
         var s = new StockItem();
         s.setName(dto.name());
@@ -33,19 +68,118 @@ public class StockItemService {
         s.setUnit(dto.unit());
         s.setUnitPrice(dto.unitPrice());
         s.setReorderLevel(dto.reorderLevel());
-        return repo.save(s);
+        var saved = repo.save(s);
+        valuation.adjust(saved.getCategory(), StockValuationService.valueOf(saved));
+        ledger.record(saved.getId(), saved.getQuantity(), MovementSource.ADJUSTMENT, saved.getId());
+        return saved;
     }
 
-    public StockItem update(UUID id, StockDtos.Create dto) {
+    @Transactional
+    public StockItem update(UUID id, StockDtos.Create dto, Long expectedVersion) {
         var s = get(id);
+        ETags.check(expectedVersion, s.getVersion(), StockItem.class, id);
+        var oldCategory = s.getCategory();
+        var oldValue = StockValuationService.valueOf(s);
+        var oldQuantity = s.getQuantity();
         s.setName(dto.name());
         s.setCategory(dto.category());
         s.setQuantity(dto.quantity());
         s.setUnit(dto.unit());
         s.setUnitPrice(dto.unitPrice());
         s.setReorderLevel(dto.reorderLevel());
-        return repo.save(s);
+        var saved = repo.save(s);
+        valuation.onItemChange(oldCategory, oldValue, saved.getCategory(), StockValuationService.valueOf(saved));
+        ledger.record(id, saved.getQuantity().subtract(oldQuantity), MovementSource.ADJUSTMENT, id);
+        return saved;
+    }
+
+    @Transactional
+    public void delete(UUID id) {
+        repo.findById(id).ifPresent(s -> {
+            valuation.adjust(s.getCategory(), StockValuationService.valueOf(s).negate());
+            ledger.record(id, s.getQuantity().negate(), MovementSource.ADJUSTMENT, id);
+            repo.delete(s);
+        });
+    }
+
+    public StockDtos.Level level(UUID id) {
+        return repo.findLevel(id).orElseThrow(() -> new ResponseStatusException(NOT_FOUND, "Stock item not found"));
+    }
+
+    public Set<UUID> existingIds(Collection<UUID> ids) {
+        return ids.isEmpty() ? Set.of() : repo.findExistingIds(ids);
+    }
+
+    // Unconditional change, e.g. receiving a purchase or returning a usage to stock
+    @Transactional
+    public StockDtos.Level adjustQuantity(UUID id, BigDecimal delta, MovementSource source, UUID sourceId) {
+        if (repo.addQuantity(id, delta) == 0) throw new ResponseStatusException(NOT_FOUND, "Stock item not found");
+        ledger.record(id, delta, source, sourceId);
+        return applied(id, delta);
     }
 
-    public void delete(UUID id) { repo.deleteById(id); }
+    @Transactional
+    public StockDtos.Level consume(UUID id, BigDecimal quantity, MovementSource source, UUID sourceId) {
+        if (repo.removeQuantity(id, quantity) == 0) {
+            if (!repo.existsById(id)) throw new ResponseStatusException(NOT_FOUND, "Stock item not found");
+            throw new ResponseStatusException(BAD_REQUEST, "Insufficient stock");
+        }
+        ledger.record(id, quantity.negate(), source, sourceId);
+        return applied(id, quantity.negate());
+    }
+
+    // Applies net changes to many items at once: one locking read, then the dirty rows flush together as a JDBC batch
+    @Transactional
+    public Map<UUID, StockItem> adjustQuantities(Map<UUID, BigDecimal> deltas, MovementSource source, UUID sourceId) {
+        var changes = deltas.entrySet().stream()
+                .map(e -> new StockDtos.Change(e.getKey(), e.getValue(), source, sourceId)).toList();
+        return applyChanges(lockAll(deltas.keySet()), changes);
+    }
+
+    // Locks the given items for the rest of the transaction; ids that do not exist are simply absent
+    @Transactional
+    public Map<UUID, StockItem> lockAll(Collection<UUID> ids) {
+        var items = new LinkedHashMap<UUID, StockItem>();
+        if (!ids.isEmpty()) repo.findAllForUpdate(ids).forEach(s -> items.put(s.getId(), s));
+        return items;
+    }
+
+    // Changes from several sources, e.g. one per usage in a batch, to items already loaded with lockAll in
+    // this transaction. Quantities move by the net change per item; the ledger gets one row per change.
+    @Transactional
+    public Map<UUID, StockItem> applyChanges(Map<UUID, StockItem> items, List<StockDtos.Change> changes) {
+        var deltas = new LinkedHashMap<UUID, BigDecimal>();
+        for (var c : changes) deltas.merge(c.stockItemId(), c.delta(), BigDecimal::add);
+        if (deltas.isEmpty()) return items;
+        var missing = deltas.keySet().stream().filter(id -> !items.containsKey(id)).map(UUID::toString).toList();
+        if (!missing.isEmpty()) throw new ResponseStatusException(NOT_FOUND, "Stock items not found: " + String.join(", ", missing));
+
+        var insufficient = deltas.entrySet().stream()
+                .filter(e -> items.get(e.getKey()).getQuantity().add(e.getValue()).signum() < 0)
+                .map(e -> items.get(e.getKey()).getName()).toList();
+        if (!insufficient.isEmpty()) throw new ResponseStatusException(BAD_REQUEST, "Insufficient stock: " + String.join(", ", insufficient));
+
+        var byCategory = new EnumMap<Category, BigDecimal>(Category.class);
+        deltas.forEach((id, delta) -> {
+            if (delta.signum() == 0) return;
+            var s = items.get(id);
+            s.setQuantity(s.getQuantity().add(delta));
+            byCategory.merge(s.getCategory(), s.getUnitPrice().multiply(delta), BigDecimal::add);
+        });
+        byCategory.forEach(valuation::adjust);
+        ledger.record(changes);
+        return items;
+    }
+
+    private StockDtos.Level applied(UUID id, BigDecimal delta) {
+        var level = level(id);
+        valuation.adjust(level.category(), level.unitPrice().multiply(delta));
+        return level;
+    }
+
+    public StockDtos.Valuation valuation() { return valuation.current(); }
+
+    public StockDtos.ValuationCheck verifyValuation() { return valuation.verify(); }
+
+    public StockDtos.Valuation rebuildValuation() { return valuation.rebuild(); }
 }
\ No newline at end of file
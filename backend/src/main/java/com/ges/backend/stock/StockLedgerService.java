@@ -0,0 +1,107 @@
+package com.ges.backend.stock;
+
+import com.ges.backend.stock.dto.StockDtos;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+
+// Point-in-time quantities come from the item's latest snapshot at or before the instant plus the
+// movements after it, so a lookup reads at most a day of ledger rows per item.
+@Service
+public class StockLedgerService {
+    private static final Instant ORIGIN = Instant.EPOCH;
+
+    private final StockMovementRepository movements;
+    private final StockSnapshotRepository snapshots;
+    private final StockItemRepository items;
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    public StockLedgerService(StockMovementRepository movements, StockSnapshotRepository snapshots, StockItemRepository items) {
+        this.movements = movements;
+        this.snapshots = snapshots;
+        this.items = items;
+    }
+
+    // Called from the writing transaction so each movement commits or rolls back with the quantity change it records
+    public void record(List<StockDtos.Change> changes) {
+        var now = now();
+        movements.saveAll(changes.stream().filter(c -> c.delta().signum() != 0).map(c -> {
+            var m = new StockMovement();
+            m.setStockItemId(c.stockItemId());
+            m.setDelta(c.delta());
+            m.setSourceType(c.source());
+            m.setSourceId(c.sourceId());
+            m.setOccurredAt(now);
+            return m;
+        }).toList());
+    }
+
+    public void record(UUID stockItemId, BigDecimal delta, MovementSource source, UUID sourceId) {
+        record(List.of(new StockDtos.Change(stockItemId, delta, source, sourceId)));
+    }
+
+    public Page<StockMovement> movements(UUID stockItemId, int page, int size) {
+        return movements.findByStockItemIdOrderByOccurredAtDesc(stockItemId, PageRequest.of(Math.max(page-1,0), size));
+    }
+
+    // Quantities at the end of the given day
+    public List<StockDtos.LevelAt> levelsOn(LocalDate day) {
+        return levelsAt(day.plusDays(1).atStartOfDay(zone).toInstant());
+    }
+
+    @Transactional(readOnly = true)
+    public List<StockDtos.LevelAt> levelsAt(Instant at) {
+        var quantities = new HashMap<UUID, BigDecimal>();
+        snapshots.findLatestAtOrBefore(at).forEach(s -> quantities.put(s.getStockItemId(), s.getQuantity()));
+        movements.sumSinceLatestSnapshot(at, ORIGIN).forEach(d -> quantities.merge(d.stockItemId(), d.delta(), BigDecimal::add));
+        return items.findAll(Sort.by("name")).stream().map(item -> {
+            var quantity = quantities.getOrDefault(item.getId(), BigDecimal.ZERO);
+            return new StockDtos.LevelAt(item.getId(), item.getName(), item.getCategory(), quantity, item.getUnitPrice().multiply(quantity));
+        }).toList();
+    }
+
+    // Snapshot as of midnight; scheduled a little later so writes in flight at midnight have committed
+    @Scheduled(cron = "${stock.snapshots.cron:0 10 0 * * *}")
+    public void snapshotToday() { takeSnapshot(LocalDate.now(zone).atStartOfDay(zone).toInstant()); }
+
+    @Transactional
+    public int takeSnapshot(Instant cutoff) {
+        if (snapshots.existsByTakenAt(cutoff)) return 0;
+        var rows = levelsAt(cutoff).stream().map(level -> snapshot(level.id(), cutoff, level.quantity())).toList();
+        snapshots.saveAll(rows);
+        return rows.size();
+    }
+
+    // Items that predate the ledger have no history: their current quantity becomes an opening snapshot
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void openLedger() {
+        var now = now();
+        snapshots.saveAll(items.findWithoutLedger().stream().map(item -> snapshot(item.getId(), now, item.getQuantity())).toList());
+    }
+
+    // Truncated to what the timestamp columns store, so cutoff comparisons see the same value that was written
+    private static Instant now() { return Instant.now().truncatedTo(ChronoUnit.MICROS); }
+
+    private static StockSnapshot snapshot(UUID stockItemId, Instant takenAt, BigDecimal quantity) {
+        var s = new StockSnapshot();
+        s.setStockItemId(stockItemId);
+        s.setTakenAt(takenAt);
+        s.setQuantity(quantity);
+        return s;
+    }
+}
@@ -0,0 +1,38 @@
+package com.ges.backend.stock;
+
+import com.ges.backend.common.TimeOrderedUuid;
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+// Append-only ledger of quantity changes. StockItem.quantity is the running total of these rows
+// and StockSnapshot stores it at fixed points so history does not need a full replay.
+@Entity
+@Table(name = "stock_movement", indexes = @Index(name = "idx_stock_movement_item_time", columnList = "stockItemId, occurredAt"))
+public class StockMovement {
+    @Id @TimeOrderedUuid
+    private UUID id;
+    @Column(nullable = false)
+    private UUID stockItemId;
+    @Column(nullable = false)
+    private BigDecimal delta;
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private MovementSource sourceType;
+    private UUID sourceId; // purchase, usage or stock item id
+    @Column(nullable = false)
+    private Instant occurredAt;
+
+    public UUID getId() { return id; }
+    public UUID getStockItemId() { return stockItemId; }
+    public void setStockItemId(UUID stockItemId) { this.stockItemId = stockItemId; }
+    public BigDecimal getDelta() { return delta; }
+    public void setDelta(BigDecimal delta) { this.delta = delta; }
+    public MovementSource getSourceType() { return sourceType; }
+    public void setSourceType(MovementSource sourceType) { this.sourceType = sourceType; }
+    public UUID getSourceId() { return sourceId; }
+    public void setSourceId(UUID sourceId) { this.sourceId = sourceId; }
+    public Instant getOccurredAt() { return occurredAt; }
+    public void setOccurredAt(Instant occurredAt) { this.occurredAt = occurredAt; }
+}
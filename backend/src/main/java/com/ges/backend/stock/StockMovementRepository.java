@@ -0,0 +1,26 @@
+package com.ges.backend.stock;
+
+import com.ges.backend.stock.dto.StockDtos;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+public interface StockMovementRepository extends JpaRepository<StockMovement, UUID> {
+    Page<StockMovement> findByStockItemIdOrderByOccurredAtDesc(UUID stockItemId, Pageable pageable);
+
+    // Net change per item after that item's latest snapshot at or before :at, up to :at
+    @Query("""
+            select new com.ges.backend.stock.dto.StockDtos$Delta(m.stockItemId, sum(m.delta))
+            from StockMovement m
+            where m.occurredAt <= :at
+              and m.occurredAt > coalesce((select max(s.takenAt) from StockSnapshot s
+                                           where s.stockItemId = m.stockItemId and s.takenAt <= :at), :origin)
+            group by m.stockItemId""")
+    List<StockDtos.Delta> sumSinceLatestSnapshot(@Param("at") Instant at, @Param("origin") Instant origin);
+}
@@ -0,0 +1,29 @@
+package com.ges.backend.stock;
+
+import com.ges.backend.common.TimeOrderedUuid;
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+// Quantity of an item at takenAt: every movement with occurredAt <= takenAt is included
+@Entity
+@Table(name = "stock_snapshot", uniqueConstraints = @UniqueConstraint(name = "uk_stock_snapshot_item_time", columnNames = {"stockItemId", "takenAt"}))
+public class StockSnapshot {
+    @Id @TimeOrderedUuid
+    private UUID id;
+    @Column(nullable = false)
+    private UUID stockItemId;
+    @Column(nullable = false)
+    private Instant takenAt;
+    @Column(nullable = false)
+    private BigDecimal quantity;
+
+    public UUID getId() { return id; }
+    public UUID getStockItemId() { return stockItemId; }
+    public void setStockItemId(UUID stockItemId) { this.stockItemId = stockItemId; }
+    public Instant getTakenAt() { return takenAt; }
+    public void setTakenAt(Instant takenAt) { this.takenAt = takenAt; }
+    public BigDecimal getQuantity() { return quantity; }
+    public void setQuantity(BigDecimal quantity) { this.quantity = quantity; }
+}
@@ -0,0 +1,19 @@
+package com.ges.backend.stock;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+public interface StockSnapshotRepository extends JpaRepository<StockSnapshot, UUID> {
+    @Query("""
+            select s from StockSnapshot s
+            where s.takenAt = (select max(s2.takenAt) from StockSnapshot s2
+                               where s2.stockItemId = s.stockItemId and s2.takenAt <= :at)""")
+    List<StockSnapshot> findLatestAtOrBefore(@Param("at") Instant at);
+
+    boolean existsByTakenAt(Instant takenAt);
+}
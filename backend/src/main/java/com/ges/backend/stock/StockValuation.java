@@ -0,0 +1,34 @@
+package com.ges.backend.stock;
+
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+import java.math.BigDecimal;
+
+// Running unitPrice * quantity total per category, adjusted by every stock write
+@Entity
+@Table(name = "stock_valuation")
+public class StockValuation implements Persistable<Category> {
+    @Id
+    @Enumerated(EnumType.STRING)
+    private Category category;
+
+    @Column(nullable = false, precision = 38, scale = 4)
+    private BigDecimal totalValue = BigDecimal.ZERO;
+
+    @Transient
+    private boolean persisted;
+
+    @PostLoad
+    @PostPersist
+    void markPersisted() { persisted = true; }
+
+    @Override
+    public Category getId() { return category; }
+    @Override
+    public boolean isNew() { return !persisted; }
+
+    public Category getCategory() { return category; }
+    public void setCategory(Category category) { this.category = category; }
+    public BigDecimal getTotalValue() { return totalValue; }
+    public void setTotalValue(BigDecimal totalValue) { this.totalValue = totalValue; }
+}
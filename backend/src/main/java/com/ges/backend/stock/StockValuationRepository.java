@@ -0,0 +1,21 @@
+package com.ges.backend.stock;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+public interface StockValuationRepository extends JpaRepository<StockValuation, Category> {
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select v from StockValuation v")
+    List<StockValuation> findAllForUpdate();
+
+    @Modifying(flushAutomatically = true)
+    @Query("update StockValuation v set v.totalValue = v.totalValue + :delta where v.category = :category")
+    int addTo(@Param("category") Category category, @Param("delta") BigDecimal delta);
+}
@@ -0,0 +1,116 @@
+package com.ges.backend.stock;
+
+import com.ges.backend.stock.dto.StockDtos;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.Map;
+
+@Service
+public class StockValuationService {
+    private final StockValuationRepository repo;
+    private final StockItemRepository stockRepo;
+    private final TransactionTemplate newTx;
+
+    public StockValuationService(StockValuationRepository repo, StockItemRepository stockRepo, PlatformTransactionManager txManager) {
+        this.repo = repo;
+        this.stockRepo = stockRepo;
+        this.newTx = new TransactionTemplate(txManager);
+        this.newTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public static BigDecimal valueOf(StockItem item) {
+        return item.getUnitPrice().multiply(item.getQuantity());
+    }
+
+    // Called from the writing service's transaction with the signed change in quantity
+    public void onQuantityChange(StockItem item, BigDecimal quantityDelta) {
+        adjust(item.getCategory(), item.getUnitPrice().multiply(quantityDelta));
+    }
+
+    public void onItemChange(Category oldCategory, BigDecimal oldValue, Category newCategory, BigDecimal newValue) {
+        if (oldCategory == newCategory) {
+            adjust(newCategory, newValue.subtract(oldValue));
+        } else {
+            adjust(oldCategory, oldValue.negate());
+            adjust(newCategory, newValue);
+        }
+    }
+
+    public void adjust(Category category, BigDecimal delta) {
+        if (delta.signum() == 0) return;
+        if (repo.addTo(category, delta) == 0) {
+            seed(category);
+            repo.addTo(category, delta);
+        }
+    }
+
+    public StockDtos.Valuation current() {
+        var byCategory = new EnumMap<Category, BigDecimal>(Category.class);
+        repo.findAll().forEach(v -> byCategory.put(v.getCategory(), v.getTotalValue()));
+        for (var category : Category.values()) {
+            byCategory.computeIfAbsent(category, c -> seed(c).getTotalValue());
+        }
+        return toValuation(byCategory);
+    }
+
+    public StockDtos.ValuationCheck verify() {
+        var maintained = current();
+        var recomputed = recompute();
+        boolean consistent = maintained.byCategory().entrySet().stream()
+                .allMatch(e -> e.getValue().compareTo(recomputed.byCategory().get(e.getKey())) == 0);
+        return new StockDtos.ValuationCheck(consistent, maintained, recomputed);
+    }
+
+    // Resets every category to a full recompute; locks the rows first so in-flight deltas serialize behind it
+    @Transactional
+    public StockDtos.Valuation rebuild() {
+        var rows = new EnumMap<Category, StockValuation>(Category.class);
+        repo.findAllForUpdate().forEach(v -> rows.put(v.getCategory(), v));
+        var recomputed = recompute();
+        recomputed.byCategory().forEach((category, value) -> {
+            var row = rows.computeIfAbsent(category, c -> {
+                var v = new StockValuation();
+                v.setCategory(c);
+                return v;
+            });
+            row.setTotalValue(value);
+            repo.save(row);
+        });
+        return recomputed;
+    }
+
+    private StockDtos.Valuation recompute() {
+        var byCategory = new EnumMap<Category, BigDecimal>(Category.class);
+        for (var category : Category.values()) {
+            byCategory.put(category, stockRepo.sumStockValue(category));
+        }
+        return toValuation(byCategory);
+    }
+
+    // First touch of a category computes it from committed rows in its own transaction
+    private StockValuation seed(Category category) {
+        try {
+            return newTx.execute(s -> {
+                var v = new StockValuation();
+                v.setCategory(category);
+                v.setTotalValue(stockRepo.sumStockValue(category));
+                return repo.saveAndFlush(v);
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Another request seeded the category first
+            return repo.findById(category).orElseThrow(() -> e);
+        }
+    }
+
+    private static StockDtos.Valuation toValuation(Map<Category, BigDecimal> byCategory) {
+        var total = byCategory.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+        return new StockDtos.Valuation(total, byCategory);
+    }
+}
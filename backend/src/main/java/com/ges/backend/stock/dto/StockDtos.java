@@ -1,9 +1,11 @@
 package com.ges.backend.stock.dto;
 
 import com.ges.backend.stock.Category;
+import com.ges.backend.stock.MovementSource;
 import jakarta.validation.constraints.*;
 
 import java.math.BigDecimal;
+import java.util.Map;
 import java.util.UUID;
 
 public class StockDtos {
@@ -25,4 +27,52 @@ public class StockDtos {
             BigDecimal unitPrice,
             BigDecimal reorderLevel
     ) {}
+
+    public record Valuation(
+            BigDecimal total,
+            Map<Category, BigDecimal> byCategory
+    ) {}
+
+    // Fresh read of the columns quantity changes depend on
+    public record Level(
+            UUID id,
+            Category category,
+            BigDecimal unitPrice,
+            BigDecimal quantity
+    ) {}
+
+    // One quantity change and what caused it; becomes a StockMovement row
+    public record Change(
+            UUID stockItemId,
+            BigDecimal delta,
+            MovementSource source,
+            UUID sourceId
+    ) {}
+
+    public record Delta(
+            UUID stockItemId,
+            BigDecimal delta
+    ) {}
+
+    // Quantity at a point in time, valued at the current unit price
+    public record LevelAt(
+            UUID id,
+            String name,
+            Category category,
+            BigDecimal quantity,
+            BigDecimal value
+    ) {}
+
+    public record ItemValue(
+            UUID id,
+            String name,
+            Category category,
+            BigDecimal value
+    ) {}
+
+    public record ValuationCheck(
+            boolean consistent,
+            Valuation maintained,
+            Valuation recomputed
+    ) {}
 }
\ No newline at end of file
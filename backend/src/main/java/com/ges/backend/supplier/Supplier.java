@@ -1,12 +1,15 @@
 package com.ges.backend.supplier;
 
+import com.ges.backend.common.TimeOrderedUuid;
 import jakarta.persistence.*;
 import java.util.UUID;
 
 @Entity
 public class Supplier {
-    @Id @GeneratedValue
+    @Id @TimeOrderedUuid
     private UUID id;
+    @Version
+    private long version;
     @Column(nullable = false)
     private String name;
     private String phone;
@@ -15,6 +18,7 @@ public class Supplier {
 
     public UUID getId() { return id; }
     public void setId(UUID id) { this.id = id; }
+    public long getVersion() { return version; }
     public String getName() { return name; }
     public void setName(String name) { this.name = name; }
     public String getPhone() { return phone; }
@@ -1,10 +1,14 @@
 package com.ges.backend.supplier;
 
+import com.ges.backend.common.ETags;
+import com.ges.backend.common.KeysetSlice;
 import com.ges.backend.supplier.dto.SupplierDtos;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import org.springframework.data.domain.Page;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
@@ -25,10 +29,21 @@ public class SupplierController {
         return service.list(page, size);
     }
 
+    @GetMapping(params = "after")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER','STAFF')")
+    @Operation(summary = "List suppliers by cursor", description = "Newest first by id; pass the returned 'next' as 'after' for the following slice")
+    public KeysetSlice<Supplier> listAfter(@RequestParam String after,
+                                           @RequestParam(defaultValue = "20") int size) {
+        return service.listAfter(after, size);
+    }
+
     @GetMapping("/{id}")
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER','STAFF')")
     @Operation(summary = "Get supplier")
-    public Supplier get(@PathVariable UUID id) { return service.get(id); }
+    public ResponseEntity<Supplier> get(@PathVariable UUID id) {
+        var entity = service.get(id);
+        return ResponseEntity.ok().eTag(ETags.of(entity.getVersion())).body(entity);
+    }
 
     @PostMapping
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
@@ -38,7 +53,11 @@ public class SupplierController {
     @PutMapping("/{id}")
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
     @Operation(summary = "Update supplier")
-    public Supplier update(@PathVariable UUID id, @RequestBody @Valid SupplierDtos.Create body) { return service.update(id, body); }
+    public ResponseEntity<Supplier> update(@PathVariable UUID id, @RequestBody @Valid SupplierDtos.Create body,
+                                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        var entity = service.update(id, body, ETags.ifMatch(ifMatch));
+        return ResponseEntity.ok().eTag(ETags.of(entity.getVersion())).body(entity);
+    }
 
     @DeleteMapping("/{id}")
     @PreAuthorize("hasRole('ADMIN')")
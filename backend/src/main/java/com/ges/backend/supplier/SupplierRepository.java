@@ -1,7 +1,8 @@
 package com.ges.backend.supplier;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 
 import java.util.UUID;
 
-public interface SupplierRepository extends JpaRepository<Supplier, UUID> {}
\ No newline at end of file
+public interface SupplierRepository extends JpaRepository<Supplier, UUID>, JpaSpecificationExecutor<Supplier> {}
\ No newline at end of file
@@ -1,5 +1,8 @@
 package com.ges.backend.supplier;
 
+import com.ges.backend.common.ETags;
+import com.ges.backend.common.Keyset;
+import com.ges.backend.common.KeysetSlice;
 import com.ges.backend.supplier.dto.SupplierDtos;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -19,6 +22,10 @@ public class SupplierService {
         return repo.findAll(PageRequest.of(Math.max(page-1,0), size));
     }
 
+    public KeysetSlice<Supplier> listAfter(String after, int size) {
+        return Keyset.byId(repo, Keyset.all(), after, size, Supplier::getId);
+    }
+
     public Supplier get(UUID id) {
         return repo.findById(id).orElseThrow(() -> new ResponseStatusException(NOT_FOUND, "Supplier not found"));
     }
@@ -32,8 +39,9 @@ public class SupplierService {
         return repo.save(s);
     }
 
-    public Supplier update(UUID id, SupplierDtos.Create dto) {
+    public Supplier update(UUID id, SupplierDtos.Create dto, Long expectedVersion) {
         var s = get(id);
+        ETags.check(expectedVersion, s.getVersion(), Supplier.class, id);
         s.setName(dto.name());
         s.setPhone(dto.phone());
         s.setEmail(dto.email());
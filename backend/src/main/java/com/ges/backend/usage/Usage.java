@@ -1,19 +1,28 @@
 package com.ges.backend.usage;
 
+import com.ges.backend.common.TimeOrderedUuid;
 import jakarta.persistence.*;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.UUID;
 
 @Entity
-@Table(name = "usages")
+@Table(name = "usages", indexes = {
+        @Index(name = "idx_usages_date_item", columnList = "date, stockItemId"),
+        @Index(name = "idx_usages_item_date", columnList = "stockItemId, date")
+})
 public class Usage {
-    @Id @GeneratedValue
+    @Id @TimeOrderedUuid
     private UUID id;
+    @Version
+    private long version;
     @Column(nullable = false)
     private UUID stockItemId;
     @Column(nullable = false)
     private BigDecimal quantityUsed;
+    // Stock item price when the usage was recorded; rollup sales value is kept at this price. Null on rows
+    // written before the column existed, which are valued at the item's current price instead
+    private BigDecimal unitPrice;
     @Column(nullable = false)
     private LocalDate date;
     private String purpose;
@@ -21,10 +30,13 @@ public class Usage {
 
     public UUID getId() { return id; }
     public void setId(UUID id) { this.id = id; }
+    public long getVersion() { return version; }
     public UUID getStockItemId() { return stockItemId; }
     public void setStockItemId(UUID stockItemId) { this.stockItemId = stockItemId; }
     public BigDecimal getQuantityUsed() { return quantityUsed; }
     public void setQuantityUsed(BigDecimal quantityUsed) { this.quantityUsed = quantityUsed; }
+    public BigDecimal getUnitPrice() { return unitPrice; }
+    public void setUnitPrice(BigDecimal unitPrice) { this.unitPrice = unitPrice; }
     public LocalDate getDate() { return date; }
     public void setDate(LocalDate date) { this.date = date; }
     public String getPurpose() { return purpose; }
@@ -1,42 +1,133 @@
 package com.ges.backend.usage;
 
+import com.ges.backend.common.ETags;
+import com.ges.backend.common.ExportFormat;
+import com.ges.backend.common.IdempotencyService;
+import com.ges.backend.common.KeysetSlice;
 import com.ges.backend.usage.dto.UsageDtos;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.springframework.data.domain.Page;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
 import java.util.UUID;
 
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+
 @RestController
 @RequestMapping("/api/usages")
 @Tag(name = "Usage", description = "Track usage of stock items and auto-decrement quantities")
 public class UsageController {
     private final UsageService service;
-    public UsageController(UsageService service) { this.service = service; }
+    private final IdempotencyService idempotency;
+    private final UsageWriteBehind writeBehind;
+
+    public UsageController(UsageService service, IdempotencyService idempotency, UsageWriteBehind writeBehind) {
+        this.service = service;
+        this.idempotency = idempotency;
+        this.writeBehind = writeBehind;
+    }
 
     @GetMapping
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER','STAFF')")
-    @Operation(summary = "List usages")
+    @Operation(summary = "List usages", description = "Optional filters: date range (inclusive), stock item and createdBy")
     public Page<Usage> list(@RequestParam(defaultValue = "1") int page,
-                            @RequestParam(defaultValue = "20") int size) { return service.list(page, size); }
+                            @RequestParam(defaultValue = "20") int size,
+                            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                            @RequestParam(required = false) UUID stockItemId,
+                            @RequestParam(required = false) String createdBy) {
+        if (from != null && to != null && from.isAfter(to)) throw new ResponseStatusException(BAD_REQUEST, "from must not be after to");
+        return service.list(page, size, new UsageDtos.Filter(from, to, stockItemId, createdBy));
+    }
+
+    @GetMapping(params = "after")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER','STAFF')")
+    @Operation(summary = "List usages by cursor", description = "Newest first by (date, id); pass the returned 'next' as 'after' for the following slice. Same filters as the paged list")
+    public KeysetSlice<Usage> listAfter(@RequestParam String after,
+                                        @RequestParam(defaultValue = "20") int size,
+                                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                        @RequestParam(required = false) UUID stockItemId,
+                                        @RequestParam(required = false) String createdBy) {
+        if (from != null && to != null && from.isAfter(to)) throw new ResponseStatusException(BAD_REQUEST, "from must not be after to");
+        return service.listAfter(after, size, new UsageDtos.Filter(from, to, stockItemId, createdBy));
+    }
+
+    @GetMapping("/export")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
+    @Operation(summary = "Export usages", description = "Streams rows dated between from and to (inclusive) as csv or ndjson")
+    public void export(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                       @RequestParam(defaultValue = "csv") String format,
+                       HttpServletResponse response) throws IOException {
+        var fmt = ExportFormat.parse(format);
+        if (from.isAfter(to)) throw new ResponseStatusException(BAD_REQUEST, "from must not be after to");
+        response.setContentType(fmt.contentType());
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"usages-" + from + "_" + to + "." + fmt.extension() + "\"");
+        service.export(from, to, fmt, response.getOutputStream());
+    }
 
     @GetMapping("/{id}")
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER','STAFF')")
     @Operation(summary = "Get usage")
-    public Usage get(@PathVariable UUID id) { return service.get(id); }
+    public ResponseEntity<Usage> get(@PathVariable UUID id) {
+        var entity = service.get(id);
+        return ResponseEntity.ok().eTag(ETags.of(entity.getVersion())).body(entity);
+    }
 
     @PostMapping
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER','STAFF')")
-    @Operation(summary = "Create usage", description = "Decrements the stock quantity for the referenced stock item")
-    public Usage create(@RequestBody @Valid UsageDtos.Create body) { return service.create(body, "system"); }
+    @Operation(summary = "Create usage", description = "Decrements the stock quantity for the referenced stock item. "
+            + "Retries carrying the same Idempotency-Key return the original usage without decrementing again")
+    public Usage create(@RequestBody @Valid UsageDtos.Create body,
+                        @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return idempotency.execute("usage", idempotencyKey, body, () -> service.create(body, "system"), Usage::getId, service::get);
+    }
+
+    @PostMapping("/batch")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER','STAFF')")
+    @Operation(summary = "Record usages in a batch",
+            description = "Records many usage lines in one transaction. mode=ALL_OR_NOTHING (default) rejects the batch if any line fails; "
+                    + "PER_LINE saves what it can and reports each line")
+    public UsageDtos.BatchResponse batch(@RequestBody List<UsageDtos.Create> body,
+                                        @RequestParam(defaultValue = "ALL_OR_NOTHING") UsageDtos.BatchMode mode) {
+        return service.createBatch(body, mode, "system");
+    }
+
+    @PostMapping("/async")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER','STAFF')")
+    @Operation(summary = "Queue a usage", description = "Checks and reserves stock, then queues the usage for the background writer. "
+            + "202 when queued, 503 when the queue is full, 404 unless usages.write-behind.enabled is set")
+    public ResponseEntity<UsageDtos.Queued> createAsync(@RequestBody @Valid UsageDtos.Create body) {
+        return ResponseEntity.accepted().body(new UsageDtos.Queued(writeBehind.submit(body)));
+    }
+
+    @GetMapping("/async/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Write-behind queue statistics")
+    public UsageWriteBehind.Stats asyncStats() { return writeBehind.stats(); }
 
     @PutMapping("/{id}")
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
     @Operation(summary = "Update usage")
-    public Usage update(@PathVariable UUID id, @RequestBody @Valid UsageDtos.Create body) { return service.update(id, body); }
+    public ResponseEntity<Usage> update(@PathVariable UUID id, @RequestBody @Valid UsageDtos.Create body,
+                                        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        var entity = service.update(id, body, ETags.ifMatch(ifMatch));
+        return ResponseEntity.ok().eTag(ETags.of(entity.getVersion())).body(entity);
+    }
 
     @DeleteMapping("/{id}")
     @PreAuthorize("hasRole('ADMIN')")
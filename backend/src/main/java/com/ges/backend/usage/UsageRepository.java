@@ -1,7 +1,96 @@
 package com.ges.backend.usage;
 
+import com.ges.backend.common.ItemTotal;
+import com.ges.backend.common.MonthlyTotal;
+import com.ges.backend.usage.dto.UsageDtos;
+import jakarta.persistence.QueryHint;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
-public interface UsageRepository extends JpaRepository<Usage, UUID> {}
\ No newline at end of file
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+
+public interface UsageRepository extends JpaRepository<Usage, UUID>, JpaSpecificationExecutor<Usage> {
+    long countByDateBetween(LocalDate from, LocalDate to);
+
+    // Values every usage in the range at the price it was recorded with, as the maintained rollup does, in a
+    // single statement. Only rows older than that column need the item's current price; usages of deleted
+    // items among those add nothing but still count as usages
+    @Query("""
+            select coalesce(sum(u.quantityUsed * coalesce(u.unitPrice, s.unitPrice)), 0)
+            from Usage u left join StockItem s on s.id = u.stockItemId
+            where u.date between :from and :to""")
+    BigDecimal sumSalesValueBetween(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Query("select min(u.date) from Usage u")
+    LocalDate findEarliestDate();
+
+    @Query("select max(u.date) from Usage u")
+    LocalDate findLatestDate();
+
+    // Usage count and sales value per month in one pass, priced like sumSalesValueBetween
+    @Query("""
+            select new com.ges.backend.common.MonthlyTotal(year(u.date), month(u.date), count(u),
+                coalesce(sum(u.quantityUsed * coalesce(u.unitPrice, s.unitPrice)), 0))
+            from Usage u left join StockItem s on s.id = u.stockItemId
+            where u.date between :from and :to
+            group by year(u.date), month(u.date)""")
+    List<MonthlyTotal> sumSalesValueByMonth(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    // Quantity used and its value per stock item; left join so usages of deleted items still count
+    @Query("""
+            select new com.ges.backend.common.ItemTotal(u.stockItemId, sum(u.quantityUsed), coalesce(sum(u.quantityUsed * s.unitPrice), 0))
+            from Usage u left join StockItem s on s.id = u.stockItemId
+            where u.date between :from and :to
+            group by u.stockItemId""")
+    List<ItemTotal> sumUsageByItem(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    // Rankings are sorted and cut in the database; only the top rows are returned
+    @Query("""
+            select new com.ges.backend.usage.dto.UsageDtos$ItemConsumption(u.stockItemId, s.name, sum(u.quantityUsed), coalesce(sum(u.quantityUsed * s.unitPrice), 0))
+            from Usage u left join StockItem s on s.id = u.stockItemId
+            where u.date between :from and :to
+            group by u.stockItemId, s.name
+            order by sum(u.quantityUsed) desc, u.stockItemId""")
+    List<UsageDtos.ItemConsumption> topByQuantity(@Param("from") LocalDate from, @Param("to") LocalDate to, Limit limit);
+
+    @Query("""
+            select new com.ges.backend.usage.dto.UsageDtos$ItemConsumption(u.stockItemId, s.name, sum(u.quantityUsed), coalesce(sum(u.quantityUsed * s.unitPrice), 0))
+            from Usage u left join StockItem s on s.id = u.stockItemId
+            where u.date between :from and :to
+            group by u.stockItemId, s.name
+            order by coalesce(sum(u.quantityUsed * s.unitPrice), 0) desc, u.stockItemId""")
+    List<UsageDtos.ItemConsumption> topByValue(@Param("from") LocalDate from, @Param("to") LocalDate to, Limit limit);
+
+    // Forward-only cursor for exports; rows are projected so nothing is held in the persistence context
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("""
+            select new com.ges.backend.usage.dto.UsageDtos$ExportLine(u.id, u.date, u.stockItemId, u.quantityUsed, u.purpose, u.createdBy)
+            from Usage u where u.date between :from and :to
+            order by u.date, u.id""")
+    Stream<UsageDtos.ExportLine> streamExportLines(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    // Only the criteria that are set become predicates. Item filters seek idx_usages_item_date, a bare date range idx_usages_date_item
+    static Specification<Usage> matching(UsageDtos.Filter f) {
+        return (root, query, cb) -> {
+            var predicates = new ArrayList<Predicate>();
+            if (f.from() != null) predicates.add(cb.greaterThanOrEqualTo(root.get("date"), f.from()));
+            if (f.to() != null) predicates.add(cb.lessThanOrEqualTo(root.get("date"), f.to()));
+            if (f.stockItemId() != null) predicates.add(cb.equal(root.get("stockItemId"), f.stockItemId()));
+            if (f.createdBy() != null && !f.createdBy().isBlank()) predicates.add(cb.equal(root.get("createdBy"), f.createdBy()));
+            return cb.and(predicates.toArray(Predicate[]::new));
+        };
+    }
+}
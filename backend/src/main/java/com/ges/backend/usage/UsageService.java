@@ -1,16 +1,35 @@
 package com.ges.backend.usage;
 
-import com.ges.backend.stock.StockItem;
-import com.ges.backend.stock.StockItemRepository;
+import com.ges.backend.common.ETags;
+import com.ges.backend.common.ExportFormat;
+import com.ges.backend.common.ExportWriter;
+import com.ges.backend.common.Keyset;
+import com.ges.backend.common.KeysetSlice;
+import com.ges.backend.report.MonthlyRollupService;
+import com.ges.backend.stock.MovementSource;
+import com.ges.backend.stock.StockItemService;
+import com.ges.backend.stock.dto.StockDtos;
 import com.ges.backend.usage.dto.UsageDtos;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static org.springframework.http.HttpStatus.BAD_REQUEST;
 import static org.springframework.http.HttpStatus.NOT_FOUND;
@@ -18,68 +37,172 @@ import static org.springframework.http.HttpStatus.NOT_FOUND;
 @Service
 public class UsageService {
     private final UsageRepository repo;
-    private final StockItemRepository stockRepo;
+    private final StockItemService stock;
+    private final MonthlyRollupService rollups;
+    private final ExportWriter exporter;
+    private final Validator validator;
+    private final int batchMaxLines;
 
-    public UsageService(UsageRepository repo, StockItemRepository stockRepo) {
+    public UsageService(UsageRepository repo, StockItemService stock, MonthlyRollupService rollups,
+                        ExportWriter exporter, Validator validator,
+                        @Value("${usages.batch.max-lines:1000}") int batchMaxLines) {
         this.repo = repo;
-        this.stockRepo = stockRepo;
+        this.stock = stock;
+        this.rollups = rollups;
+        this.exporter = exporter;
+        this.validator = validator;
+        this.batchMaxLines = batchMaxLines;
     }
 
-    public Page<Usage> list(int page, int size) { return repo.findAll(PageRequest.of(Math.max(page-1,0), size)); }
+    public Page<Usage> list(int page, int size, UsageDtos.Filter filter) {
+        return repo.findAll(UsageRepository.matching(filter), PageRequest.of(Math.max(page-1,0), size));
+    }
+
+    public KeysetSlice<Usage> listAfter(String after, int size, UsageDtos.Filter filter) {
+        return Keyset.byDateThenId(repo, UsageRepository.matching(filter), after, size, Usage::getDate, Usage::getId);
+    }
 
     public Usage get(UUID id) { return repo.findById(id).orElseThrow(() -> new ResponseStatusException(NOT_FOUND, "Usage not found")); }
 
+    @Transactional(readOnly = true)
+    public long export(LocalDate from, LocalDate to, ExportFormat format, OutputStream out) throws IOException {
+        try (var rows = repo.streamExportLines(from, to)) {
+            return exporter.write(rows, UsageDtos.ExportLine.class, format, out);
+        }
+    }
+
     @Transactional
     public Usage create(UsageDtos.Create dto, String createdBy) {
-        StockItem item = stockRepo.findById(dto.stockItemId())
-                .orElseThrow(() -> new ResponseStatusException(NOT_FOUND, "Stock item not found"));
-        BigDecimal newQty = item.getQuantity().subtract(dto.quantityUsed());
-        if (newQty.signum() < 0) throw new ResponseStatusException(BAD_REQUEST, "Insufficient stock");
-        item.setQuantity(newQty);
-        stockRepo.save(item);
+        // The price is read first so the row is inserted with it; consume() flushes the insert
+        var saved = repo.save(newUsage(dto, createdBy, stock.level(dto.stockItemId()).unitPrice()));
+        stock.consume(dto.stockItemId(), dto.quantityUsed(), MovementSource.USAGE, saved.getId());
+
+        rollups.addUsage(saved.getDate(), 1, salesValue(saved));
+        return saved;
+    }
+
+    // One transaction for the whole batch: every referenced item is locked with one query, stock changes are
+    // netted per item and flushed as batched versioned UPDATEs, and the usage rows insert as a JDBC batch.
+    // PER_LINE checks lines in order against a running balance and skips the ones that cannot be applied.
+    @Transactional
+    public UsageDtos.BatchResponse createBatch(List<UsageDtos.Create> lines, UsageDtos.BatchMode mode, String createdBy) {
+        if (lines.size() > batchMaxLines) throw new ResponseStatusException(BAD_REQUEST, "At most " + batchMaxLines + " lines per batch");
+        var errors = new String[lines.size()];
+        var ids = new HashSet<UUID>();
+        for (int i = 0; i < lines.size(); i++) {
+            errors[i] = problems(lines.get(i));
+            if (errors[i] == null) ids.add(lines.get(i).stockItemId());
+        }
+        if (mode == UsageDtos.BatchMode.ALL_OR_NOTHING) rejectIfAny(errors);
+
+        var items = stock.lockAll(ids);
+        var balance = new HashMap<UUID, BigDecimal>();
+        items.forEach((id, item) -> balance.put(id, item.getQuantity()));
+        for (int i = 0; i < lines.size(); i++) {
+            if (errors[i] != null) continue;
+            var line = lines.get(i);
+            var left = balance.get(line.stockItemId());
+            if (left == null) errors[i] = "Stock item not found";
+            else if (left.compareTo(line.quantityUsed()) < 0) errors[i] = "Insufficient stock: " + items.get(line.stockItemId()).getName();
+            else balance.put(line.stockItemId(), left.subtract(line.quantityUsed()));
+        }
+        if (mode == UsageDtos.BatchMode.ALL_OR_NOTHING) rejectIfAny(errors);
+
+        var accepted = new ArrayList<Integer>();
+        var usages = new ArrayList<Usage>();
+        for (int i = 0; i < lines.size(); i++) {
+            if (errors[i] != null) continue;
+            accepted.add(i);
+            var line = lines.get(i);
+            usages.add(newUsage(line, createdBy, items.get(line.stockItemId()).getUnitPrice()));
+        }
+        var saved = repo.saveAll(usages);
+        stock.applyChanges(items, saved.stream()
+                .map(u -> new StockDtos.Change(u.getStockItemId(), u.getQuantityUsed().negate(), MovementSource.USAGE, u.getId()))
+                .toList());
+
+        var byMonth = new TreeMap<YearMonth, BigDecimal>();
+        var countByMonth = new HashMap<YearMonth, Long>();
+        for (var u : saved) {
+            var month = YearMonth.from(u.getDate());
+            byMonth.merge(month, salesValue(u), BigDecimal::add);
+            countByMonth.merge(month, 1L, Long::sum);
+        }
+        byMonth.forEach((month, value) -> rollups.addUsage(month.atDay(1), countByMonth.get(month), value));
 
+        var results = new UsageDtos.BatchResult[lines.size()];
+        for (int i = 0; i < lines.size(); i++) if (errors[i] != null) results[i] = new UsageDtos.BatchResult(i, null, errors[i]);
+        for (int j = 0; j < accepted.size(); j++) results[accepted.get(j)] = new UsageDtos.BatchResult(accepted.get(j), saved.get(j).getId(), null);
+        return new UsageDtos.BatchResponse(saved.size(), lines.size() - saved.size(), List.of(results));
+    }
+
+    private String problems(UsageDtos.Create line) {
+        if (line == null) return "Line is empty";
+        var violations = validator.validate(line);
+        if (violations.isEmpty()) return null;
+        return violations.stream().map(v -> v.getPropertyPath() + " " + v.getMessage()).sorted().collect(Collectors.joining("; "));
+    }
+
+    private static void rejectIfAny(String[] errors) {
+        var failed = new ArrayList<String>();
+        for (int i = 0; i < errors.length; i++) if (errors[i] != null) failed.add("line " + i + ": " + errors[i]);
+        if (!failed.isEmpty()) throw new ResponseStatusException(BAD_REQUEST, String.join("; ", failed));
+    }
+
+    private static Usage newUsage(UsageDtos.Create dto, String createdBy, BigDecimal unitPrice) {
         var u = new Usage();
         u.setStockItemId(dto.stockItemId());
         u.setQuantityUsed(dto.quantityUsed());
+        u.setUnitPrice(unitPrice);
         u.setDate(dto.date());
         u.setPurpose(dto.purpose());
         u.setCreatedBy(createdBy);
-        return repo.save(u);
+        return u;
     }
 
     @Transactional
-    public Usage update(UUID id, UsageDtos.Create dto) {
+    public Usage update(UUID id, UsageDtos.Create dto, Long expectedVersion) {
         Usage u = get(id);
-        
-        // Restore the old quantity to stock
-        StockItem item = stockRepo.findById(u.getStockItemId())
-                .orElseThrow(() -> new ResponseStatusException(NOT_FOUND, "Stock item not found"));
-        item.setQuantity(item.getQuantity().add(u.getQuantityUsed()));
-        
-        // Apply the new quantity
-        BigDecimal newQty = item.getQuantity().subtract(dto.quantityUsed());
-        if (newQty.signum() < 0) throw new ResponseStatusException(BAD_REQUEST, "Insufficient stock");
-        item.setQuantity(newQty);
-        stockRepo.save(item);
-        
+        ETags.check(expectedVersion, u.getVersion(), Usage.class, id);
+        // The old value leaves the rollup at the price it was added with, whatever the item costs now
+        rollups.addUsage(u.getDate(), -1, salesValue(u).negate());
+        if (u.getStockItemId().equals(dto.stockItemId())) {
+            // Same item: apply only the net change, taking stock only when more is used. The usage keeps its
+            // price, and an unchanged quantity leaves the stock row (and its ETag) alone
+            var extra = dto.quantityUsed().subtract(u.getQuantityUsed());
+            if (extra.signum() > 0) stock.consume(dto.stockItemId(), extra, MovementSource.USAGE, id);
+            else if (extra.signum() < 0) stock.adjustQuantity(dto.stockItemId(), extra.negate(), MovementSource.USAGE, id);
+            if (u.getUnitPrice() == null) u.setUnitPrice(stock.level(dto.stockItemId()).unitPrice());
+        } else {
+            // Moved to another item: return the old quantity, then take the new one at the new item's price
+            stock.adjustQuantity(u.getStockItemId(), u.getQuantityUsed(), MovementSource.USAGE, id);
+            u.setUnitPrice(stock.consume(dto.stockItemId(), dto.quantityUsed(), MovementSource.USAGE, id).unitPrice());
+        }
+
         // Update usage record
         u.setStockItemId(dto.stockItemId());
         u.setQuantityUsed(dto.quantityUsed());
         u.setDate(dto.date());
         u.setPurpose(dto.purpose());
-        return repo.save(u);
+        var saved = repo.save(u);
+        rollups.addUsage(saved.getDate(), 1, salesValue(saved));
+        return saved;
     }
 
     @Transactional
     public void delete(UUID id) {
         Usage u = get(id);
-        
+
         // Restore quantity to stock when deleting usage
-        StockItem item = stockRepo.findById(u.getStockItemId())
-                .orElseThrow(() -> new ResponseStatusException(NOT_FOUND, "Stock item not found"));
-        item.setQuantity(item.getQuantity().add(u.getQuantityUsed()));
-        stockRepo.save(item);
-        
+        stock.adjustQuantity(u.getStockItemId(), u.getQuantityUsed(), MovementSource.USAGE, id);
+        rollups.addUsage(u.getDate(), -1, salesValue(u).negate());
+
         repo.deleteById(id);
     }
-}
\ No newline at end of file
+
+    // Rows from before unitPrice was stored fall back to the item's current price
+    private BigDecimal salesValue(Usage u) {
+        var price = u.getUnitPrice() != null ? u.getUnitPrice() : stock.level(u.getStockItemId()).unitPrice();
+        return price.multiply(u.getQuantityUsed());
+    }
+}
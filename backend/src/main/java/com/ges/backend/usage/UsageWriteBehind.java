@@ -0,0 +1,214 @@
+package com.ges.backend.usage;
+
+import com.ges.backend.stock.StockItemService;
+import com.ges.backend.usage.dto.UsageDtos;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.NOT_FOUND;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+// Optional asynchronous usage recording for peak hours. submit() checks the line against an in-memory balance
+// of the item, reserves the quantity and enqueues it; one writer thread group-commits up to batchSize queued
+// lines per transaction through createBatch, at least every flushInterval. The balance is read from the database
+// once when the item's first line arrives and dropped when its last line has been written, so a submit never
+// waits on the database otherwise. It only covers this queue: synchronous writes that take the same stock
+// meanwhile can still make a queued line fail at write time, in which case it is counted as rejected and logged.
+@Slf4j
+@Component
+public class UsageWriteBehind implements SmartLifecycle {
+    public record Stats(boolean enabled, int queued, int items, long accepted, long written, long rejected, long failed, long batches) {}
+
+    private static final int WRITE_ATTEMPTS = 3;
+
+    // One item's stock as this queue sees it: stored quantity minus the lines reserved since, plus the ones
+    // that failed to write
+    private static final class Reservation {
+        private BigDecimal available; // null until read from the database
+        private int outstanding; // lines reserved and not yet released
+        private boolean retired; // removed from the map; a caller holding it must look the item up again
+    }
+
+    private final UsageService usages;
+    private final StockItemService stock;
+    private final boolean enabled;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final Duration drainTimeout;
+
+    // ConcurrentLinkedQueue is lock-free but unbounded, so the bound is kept by the size counter
+    private final Queue<UsageDtos.Create> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final Map<UUID, Reservation> reserved = new ConcurrentHashMap<>();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    private volatile boolean running;
+    private volatile Thread writer;
+
+    public UsageWriteBehind(UsageService usages, StockItemService stock,
+                            @Value("${usages.write-behind.enabled:false}") boolean enabled,
+                            @Value("${usages.write-behind.queue-capacity:10000}") int capacity,
+                            @Value("${usages.write-behind.batch-size:200}") int batchSize,
+                            @Value("${usages.write-behind.flush-interval:PT0.05S}") Duration flushInterval,
+                            @Value("${usages.write-behind.drain-timeout:PT30S}") Duration drainTimeout) {
+        this.usages = usages;
+        this.stock = stock;
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.batchSize = Math.max(batchSize, 1);
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.drainTimeout = drainTimeout;
+    }
+
+    public int submit(UsageDtos.Create dto) {
+        if (!enabled) throw new ResponseStatusException(NOT_FOUND, "Asynchronous usage recording is disabled");
+        if (!running) throw new ResponseStatusException(SERVICE_UNAVAILABLE, "Usage queue is shutting down");
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            throw new ResponseStatusException(SERVICE_UNAVAILABLE, "Usage queue is full, retry later");
+        }
+        try {
+            reserve(dto);
+        } catch (RuntimeException e) {
+            size.decrementAndGet();
+            throw e;
+        }
+        queue.add(dto);
+        accepted.incrementAndGet();
+        int depth = size.get();
+        if (depth >= batchSize) LockSupport.unpark(writer);
+        return depth;
+    }
+
+    public Stats stats() {
+        return new Stats(enabled, size.get(), reserved.size(), accepted.get(), written.get(), rejected.get(), failed.get(), batches.get());
+    }
+
+    // Fails fast: a shortfall answers 400 when nothing of the item is in flight (the balance was just read), and
+    // 503 otherwise, since failed lines may still be credited back or stock may have arrived since the read
+    private void reserve(UsageDtos.Create dto) {
+        var id = dto.stockItemId();
+        while (true) {
+            var r = reserved.computeIfAbsent(id, k -> new Reservation());
+            synchronized (r) {
+                if (r.retired) continue;
+                if (r.available == null) {
+                    try {
+                        r.available = stock.level(id).quantity();
+                    } catch (RuntimeException e) {
+                        retire(id, r); // unknown ids must not leave an entry behind
+                        throw e;
+                    }
+                }
+                if (r.available.compareTo(dto.quantityUsed()) < 0) {
+                    if (r.outstanding > 0) throw new ResponseStatusException(SERVICE_UNAVAILABLE, "Stock is held by queued usages, retry later");
+                    retire(id, r);
+                    throw new ResponseStatusException(BAD_REQUEST, "Insufficient stock");
+                }
+                r.available = r.available.subtract(dto.quantityUsed());
+                r.outstanding++;
+                return;
+            }
+        }
+    }
+
+    // Called only after the line's batch has committed (or been given up on); a line that was not written
+    // gives its quantity back
+    private void release(UsageDtos.Create dto, boolean written) {
+        var r = reserved.get(dto.stockItemId());
+        synchronized (r) {
+            if (!written) r.available = r.available.add(dto.quantityUsed());
+            if (--r.outstanding == 0) retire(dto.stockItemId(), r);
+        }
+    }
+
+    private void retire(UUID id, Reservation r) {
+        r.retired = true;
+        reserved.remove(id, r);
+    }
+
+    private void runWriter() {
+        while (running || size.get() > 0) {
+            if (running && size.get() < batchSize) LockSupport.parkNanos(this, flushIntervalNanos);
+            var batch = new ArrayList<UsageDtos.Create>(batchSize);
+            UsageDtos.Create next;
+            while (batch.size() < batchSize && (next = queue.poll()) != null) batch.add(next);
+            if (!batch.isEmpty()) write(batch);
+        }
+    }
+
+    private void write(List<UsageDtos.Create> batch) {
+        var ok = new boolean[batch.size()];
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    var response = usages.createBatch(batch, UsageDtos.BatchMode.PER_LINE, "system");
+                    written.addAndGet(response.created());
+                    rejected.addAndGet(response.failed());
+                    batches.incrementAndGet();
+                    for (var result : response.results()) {
+                        if (result.error() != null) log.warn("Queued usage {} rejected: {}", batch.get(result.index()), result.error());
+                        else ok[result.index()] = true;
+                    }
+                    return;
+                } catch (RuntimeException e) {
+                    if (attempt == WRITE_ATTEMPTS) {
+                        failed.addAndGet(batch.size());
+                        log.error("Dropping {} queued usages after {} attempts", batch.size(), attempt, e);
+                        return;
+                    }
+                    LockSupport.parkNanos(this, flushIntervalNanos * attempt);
+                }
+            }
+        } finally {
+            for (int i = 0; i < batch.size(); i++) release(batch.get(i), ok[i]);
+            size.addAndGet(-batch.size());
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!enabled || running) return;
+        running = true;
+        writer = Thread.ofPlatform().name("usage-writer").start(this::runWriter);
+    }
+
+    // Stops taking new lines, then lets the writer flush everything already queued
+    @Override
+    public void stop() {
+        if (!running) return;
+        running = false;
+        var thread = writer;
+        LockSupport.unpark(thread);
+        try {
+            if (!thread.join(drainTimeout)) log.error("Usage queue not drained within {}; {} lines left", drainTimeout, size.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() { return running; }
+}
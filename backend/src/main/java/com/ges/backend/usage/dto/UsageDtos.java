@@ -4,6 +4,7 @@ import jakarta.validation.constraints.NotNull;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.List;
 import java.util.UUID;
 
 public class UsageDtos {
@@ -13,4 +14,23 @@ public class UsageDtos {
             @NotNull LocalDate date,
             String purpose
     ) {}
+
+    // List filters; null means "any"
+    public record Filter(LocalDate from, LocalDate to, UUID stockItemId, String createdBy) {}
+
+    // ALL_OR_NOTHING rejects the whole batch if any line fails; PER_LINE saves the lines that can be saved
+    public enum BatchMode { ALL_OR_NOTHING, PER_LINE }
+
+    // index is the line's position in the request; id is set on success, error on failure
+    public record BatchResult(int index, UUID id, String error) {}
+
+    public record BatchResponse(int created, int failed, List<BatchResult> results) {}
+
+    // Returned with 202 when a usage is queued for the write-behind writer
+    public record Queued(int queueDepth) {}
+
+    public record ItemConsumption(UUID stockItemId, String name, BigDecimal quantity, BigDecimal value) {}
+
+    public record ExportLine(UUID id, LocalDate date, UUID stockItemId, BigDecimal quantityUsed,
+                             String purpose, String createdBy) {}
 }
\ No newline at end of file
@@ -1,12 +1,13 @@
 package com.ges.backend.user;
 
+import com.ges.backend.common.TimeOrderedUuid;
 import jakarta.persistence.*;
 import java.util.UUID;
 
 @Entity
 @Table(name = "users", uniqueConstraints = @UniqueConstraint(columnNames = "email"))
 public class User {
-    @Id @GeneratedValue
+    @Id @TimeOrderedUuid
     private UUID id;
 
     @Column(nullable = false)
@@ -1,5 +1,6 @@
 package com.ges.backend.user;
 
+import com.ges.backend.common.KeysetSlice;
 import com.ges.backend.user.dto.UserDtos;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -25,6 +26,14 @@ public class UserController {
         return service.list(page, size);
     }
 
+    @GetMapping(params = "after")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "List users by cursor", description = "Newest first by id; pass the returned 'next' as 'after' for the following slice")
+    public KeysetSlice<User> listAfter(@RequestParam String after,
+                                       @RequestParam(defaultValue = "20") int size) {
+        return service.listAfter(after, size);
+    }
+
     @GetMapping("/{id}")
     @PreAuthorize("hasRole('ADMIN')")
     @Operation(summary = "Get user")
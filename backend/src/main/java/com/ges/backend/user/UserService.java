@@ -1,5 +1,7 @@
 package com.ges.backend.user;
 
+import com.ges.backend.common.Keyset;
+import com.ges.backend.common.KeysetSlice;
 import com.ges.backend.user.dto.UserDtos;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -47,6 +49,10 @@ public class UserService implements UserDetailsService {
     public Page<User> list(int page, int size) {
         return repo.findAll(PageRequest.of(Math.max(page - 1, 0), size));
     }
+
+    public KeysetSlice<User> listAfter(String after, int size) {
+        return Keyset.byId(repo, Keyset.all(), after, size, User::getId);
+    }
     
     public User get(UUID id) { return repo.findById(id).orElseThrow(); }
     
@@ -0,0 +1,37 @@
+package com.ges.backend.common;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Records the SQL Hibernate generates so tests can EXPLAIN the real statement. Enable per test class with
+// spring.jpa.properties.hibernate.session_factory.statement_inspector=com.ges.backend.common.CapturedSql
+public class CapturedSql implements StatementInspector {
+    private static final List<String> statements = new CopyOnWriteArrayList<>();
+
+    @Override
+    public String inspect(String sql) {
+        statements.add(sql);
+        return sql;
+    }
+
+    public static void clear() { statements.clear(); }
+
+    public static String lastSelectFrom(String table) {
+        for (int i = statements.size() - 1; i >= 0; i--) {
+            var sql = statements.get(i);
+            if (sql.startsWith("select") && sql.contains(" from " + table + " ") && !sql.startsWith("select count")) return sql;
+        }
+        throw new AssertionError("No select from " + table + " captured in " + statements);
+    }
+
+    // Binds params to the leading placeholders; any left over are the page's offset and limit
+    public static String explain(EntityManager em, String sql, int pageSize, Object... params) {
+        var query = em.createNativeQuery("explain " + sql);
+        int placeholders = (int) sql.chars().filter(c -> c == '?').count();
+        for (int i = 0; i < placeholders; i++) query.setParameter(i + 1, i < params.length ? params[i] : pageSize);
+        return (String) query.getSingleResult();
+    }
+}
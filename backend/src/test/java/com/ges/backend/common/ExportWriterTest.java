@@ -0,0 +1,45 @@
+package com.ges.backend.common;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExportWriterTest {
+
+    record Row(String name, LocalDate date, BigDecimal amount) {}
+
+    private final ExportWriter writer = new ExportWriter(new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS));
+
+    @Test
+    void writesCsvWithHeaderAndQuotedFields() throws Exception {
+        var out = new ByteArrayOutputStream();
+        long n = writer.write(Stream.of(
+                new Row("plain", LocalDate.of(2025, 1, 2), new BigDecimal("1E+1")),
+                new Row("with, \"quotes\"", LocalDate.of(2025, 1, 3), null)), Row.class, ExportFormat.CSV, out);
+
+        assertThat(n).isEqualTo(2);
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(
+                "name,date,amount\n"
+                + "plain,2025-01-02,10\n"
+                + "\"with, \"\"quotes\"\"\",2025-01-03,\n");
+    }
+
+    @Test
+    void writesOneJsonObjectPerLine() throws Exception {
+        var out = new ByteArrayOutputStream();
+        writer.write(Stream.of(new Row("a", LocalDate.of(2025, 1, 2), new BigDecimal("2.50"))), Row.class, ExportFormat.NDJSON, out);
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("{\"name\":\"a\",\"date\":\"2025-01-02\",\"amount\":2.50}\n");
+    }
+}
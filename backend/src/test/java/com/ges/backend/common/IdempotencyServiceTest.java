@@ -0,0 +1,141 @@
+package com.ges.backend.common;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ges.backend.purchase.Purchase;
+import com.ges.backend.purchase.PurchaseService;
+import com.ges.backend.purchase.dto.PurchaseDtos;
+import com.ges.backend.stock.Category;
+import com.ges.backend.stock.StockItem;
+import com.ges.backend.stock.StockItemRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class IdempotencyServiceTest {
+
+    @Autowired IdempotencyService idempotency;
+    @Autowired IdempotencyRecordRepository records;
+    @Autowired PurchaseService purchases;
+    @Autowired StockItemRepository stockRepo;
+    @Autowired ObjectMapper objectMapper;
+    @Autowired PlatformTransactionManager txManager;
+
+    @Test
+    void retryReturnsTheOriginalPurchaseWithoutWritingAgain() {
+        var item = newItem();
+        var dto = purchaseOf(item, "4");
+        var key = UUID.randomUUID().toString();
+        var calls = new AtomicInteger();
+
+        var first = create(idempotency, key, dto, calls);
+        var retry = create(idempotency, key, dto, calls);
+
+        assertThat(retry.getId()).isEqualTo(first.getId());
+        assertThat(calls).hasValue(1);
+        assertThat(stockRepo.findById(item.getId()).orElseThrow().getQuantity()).isEqualByComparingTo("4");
+
+        // A fresh instance has an empty memory store and falls back to the table, as after a restart
+        var restarted = new IdempotencyService(records, objectMapper, txManager, Duration.ofHours(24), 10);
+        assertThat(create(restarted, key, dto, calls).getId()).isEqualTo(first.getId());
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void reusingAKeyForADifferentRequestIsRejected() {
+        var item = newItem();
+        var key = UUID.randomUUID().toString();
+        var calls = new AtomicInteger();
+        create(idempotency, key, purchaseOf(item, "1"), calls);
+
+        assertThatThrownBy(() -> create(idempotency, key, purchaseOf(item, "2"), calls))
+                .isInstanceOfSatisfying(ResponseStatusException.class, e -> assertThat(e.getStatusCode().value()).isEqualTo(422));
+        assertThat(stockRepo.findById(item.getId()).orElseThrow().getQuantity()).isEqualByComparingTo("1");
+    }
+
+    @Test
+    void concurrentRetriesWriteOnce() throws Exception {
+        var item = newItem();
+        var dto = purchaseOf(item, "3");
+        var key = UUID.randomUUID().toString();
+        var calls = new AtomicInteger();
+
+        try (var pool = Executors.newFixedThreadPool(4)) {
+            Callable<Purchase> retry = () -> create(idempotency, key, dto, calls);
+            var futures = pool.invokeAll(List.of(retry, retry, retry, retry));
+            var ids = futures.stream().map(f -> {
+                try { return f.get().getId(); } catch (Exception e) { throw new IllegalStateException(e); }
+            }).distinct().toList();
+            assertThat(ids).hasSize(1);
+        }
+        assertThat(stockRepo.findById(item.getId()).orElseThrow().getQuantity()).isEqualByComparingTo("3");
+    }
+
+    @Test
+    void keyCommittedAfterTheLookupIsReplayedNotOverwritten() {
+        var item = newItem();
+        var dto = purchaseOf(item, "2");
+        var key = UUID.randomUUID().toString();
+        var calls = new AtomicInteger();
+        var competitor = new AtomicReference<Purchase>();
+
+        // The competing request commits just as ours opens its transaction, i.e. after our lookup missed
+        var racing = new PlatformTransactionManager() {
+            @Override
+            public TransactionStatus getTransaction(TransactionDefinition definition) {
+                if (competitor.get() == null) competitor.set(create(idempotency, key, dto, calls));
+                return txManager.getTransaction(definition);
+            }
+            @Override
+            public void commit(TransactionStatus status) { txManager.commit(status); }
+            @Override
+            public void rollback(TransactionStatus status) { txManager.rollback(status); }
+        };
+        var ours = new IdempotencyService(records, objectMapper, racing, Duration.ofHours(24), 10);
+
+        assertThat(create(ours, key, dto, calls).getId()).isEqualTo(competitor.get().getId());
+        assertThat(calls).hasValue(1);
+        assertThat(stockRepo.findById(item.getId()).orElseThrow().getQuantity()).isEqualByComparingTo("2");
+    }
+
+    private Purchase create(IdempotencyService service, String key, PurchaseDtos.Create dto, AtomicInteger calls) {
+        return service.execute("purchase", key, dto, () -> {
+            calls.incrementAndGet();
+            return purchases.create(dto);
+        }, Purchase::getId, purchases::get);
+    }
+
+    private StockItem newItem() {
+        var item = new StockItem();
+        item.setName("Oil");
+        item.setCategory(Category.FOOD);
+        item.setQuantity(BigDecimal.ZERO);
+        item.setUnit("l");
+        item.setUnitPrice(new BigDecimal("3.00"));
+        return stockRepo.save(item);
+    }
+
+    private static PurchaseDtos.Create purchaseOf(StockItem item, String quantity) {
+        return new PurchaseDtos.Create(UUID.randomUUID(), LocalDate.of(2043, 2, 1),
+                List.of(new PurchaseDtos.Item(item.getId(), new BigDecimal(quantity), new BigDecimal("3.00"))));
+    }
+}
@@ -0,0 +1,92 @@
+package com.ges.backend.common;
+
+import com.ges.backend.expense.Expense;
+import com.ges.backend.expense.ExpenseRepository;
+import com.ges.backend.expense.dto.ExpenseDtos;
+import com.ges.backend.supplier.Supplier;
+import com.ges.backend.supplier.SupplierRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest
+@ActiveProfiles("test")
+class KeysetTest {
+
+    @Autowired ExpenseRepository expenses;
+    @Autowired SupplierRepository suppliers;
+
+    @Test
+    void walksDatedRowsInDateThenIdOrderAcrossTies() {
+        // 25 rows over 5 days, so every slice boundary falls inside a run of equal dates
+        for (int i = 0; i < 25; i++) expenses.save(expense("Keyset", LocalDate.of(2046, 1, 1 + i % 5)));
+        var filter = new ExpenseDtos.Filter(null, null, "Keyset");
+
+        var seen = new ArrayList<Expense>();
+        String after = "";
+        int slices = 0;
+        do {
+            var slice = Keyset.byDateThenId(expenses, ExpenseRepository.matching(filter), after, 10, Expense::getDate, Expense::getId);
+            seen.addAll(slice.content());
+            assertThat(slice.hasNext()).isEqualTo(slice.next() != null);
+            after = slice.next();
+            slices++;
+        } while (after != null);
+
+        assertThat(slices).isEqualTo(3);
+        assertThat(seen).hasSize(25);
+        assertThat(new HashSet<>(seen.stream().map(Expense::getId).toList())).hasSize(25);
+        assertThat(seen).isSortedAccordingTo(Comparator.comparing(Expense::getDate).thenComparing(Expense::getId).reversed());
+    }
+
+    @Test
+    void walksUndatedRowsById() {
+        var ids = new ArrayList<UUID>();
+        for (int i = 0; i < 5; i++) {
+            var s = new Supplier();
+            s.setName("Keyset supplier " + i);
+            ids.add(suppliers.save(s).getId());
+        }
+        var first = Keyset.byId(suppliers, Keyset.all(), null, 3, Supplier::getId);
+        var second = Keyset.byId(suppliers, Keyset.all(), first.next(), 3, Supplier::getId);
+
+        List<UUID> walked = new ArrayList<>();
+        first.content().forEach(s -> walked.add(s.getId()));
+        second.content().forEach(s -> walked.add(s.getId()));
+        assertThat(walked).doesNotHaveDuplicates().containsAll(ids);
+        assertThat(walked).isSortedAccordingTo(Comparator.reverseOrder());
+    }
+
+    @Test
+    void rejectsMalformedCursorAndSize() {
+        var filter = new ExpenseDtos.Filter(null, null, null);
+        assertThatThrownBy(() -> Keyset.byDateThenId(expenses, ExpenseRepository.matching(filter), "not a cursor!", 10, Expense::getDate, Expense::getId))
+                .isInstanceOf(ResponseStatusException.class).hasMessageContaining("Invalid cursor");
+        assertThatThrownBy(() -> Keyset.byId(suppliers, Keyset.all(), "bm9wZQ", 10, Supplier::getId))
+                .isInstanceOf(ResponseStatusException.class).hasMessageContaining("Invalid cursor");
+        assertThatThrownBy(() -> Keyset.byId(suppliers, Keyset.all(), null, 0, Supplier::getId))
+                .isInstanceOf(ResponseStatusException.class);
+        assertThat(Keyset.byId(suppliers, Keyset.all(), null, 1000, Supplier::getId).size()).isEqualTo(Keyset.MAX_SIZE);
+    }
+
+    private static Expense expense(String category, LocalDate date) {
+        var e = new Expense();
+        e.setCategory(category);
+        e.setAmount(BigDecimal.TEN);
+        e.setDate(date);
+        return e;
+    }
+}
@@ -0,0 +1,93 @@
+package com.ges.backend.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+    private static final int CALLERS = 16;
+
+    @Test
+    void simultaneousCallersShareOneComputation() throws Exception {
+        var flights = new SingleFlight<String, Integer>();
+        var computations = new AtomicInteger();
+        var release = new CountDownLatch(1);
+
+        var results = runConcurrently(() -> flights.execute("2024-05", () -> {
+            computations.incrementAndGet();
+            await(release);
+            return 42;
+        }), release);
+
+        for (var result : results) assertThat(result.get()).isEqualTo(42);
+        assertThat(computations).hasValue(1);
+
+        // Once finished, the next call computes afresh
+        assertThat(flights.execute("2024-05", () -> 7)).isEqualTo(7);
+    }
+
+    @Test
+    void failureReachesEveryWaitingCaller() throws Exception {
+        var flights = new SingleFlight<String, Integer>();
+        var computations = new AtomicInteger();
+        var release = new CountDownLatch(1);
+
+        var results = runConcurrently(() -> flights.execute("2024-06", () -> {
+            computations.incrementAndGet();
+            await(release);
+            throw new IllegalStateException("boom");
+        }), release);
+
+        for (var result : results) {
+            assertThatThrownBy(result::get)
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(IllegalStateException.class)
+                    .hasRootCauseMessage("boom");
+        }
+        assertThat(computations).hasValue(1);
+    }
+
+    // Starts CALLERS threads together, gives them time to join the flight, then lets the leader finish
+    private static List<Future<Integer>> runConcurrently(Callable<Integer> call, CountDownLatch release) throws Exception {
+        var pool = Executors.newFixedThreadPool(CALLERS);
+        try {
+            var ready = new CountDownLatch(CALLERS);
+            var results = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(pool.submit(() -> {
+                    ready.countDown();
+                    return call.call();
+                }));
+            }
+            assertThat(ready.await(5, TimeUnit.SECONDS)).isTrue();
+            Thread.sleep(200);
+            release.countDown();
+            for (var result : results) {
+                try { result.get(5, TimeUnit.SECONDS); } catch (ExecutionException ignored) { }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
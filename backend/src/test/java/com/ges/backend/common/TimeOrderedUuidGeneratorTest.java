@@ -0,0 +1,34 @@
+package com.ges.backend.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimeOrderedUuidGeneratorTest {
+
+    @Test
+    void generatesVersion7WithCurrentTimestamp() {
+        long before = System.currentTimeMillis();
+        var id = TimeOrderedUuidGenerator.next();
+
+        assertThat(id.version()).isEqualTo(7);
+        assertThat(id.variant()).isEqualTo(2);
+        assertThat(id.getMostSignificantBits() >>> 16).isBetween(before, System.currentTimeMillis() + 1);
+    }
+
+    @Test
+    void idsAreUniqueAndIncreaseInByteOrder() {
+        var seen = new HashSet<UUID>();
+        UUID previous = TimeOrderedUuidGenerator.next();
+        for (int i = 0; i < 100_000; i++) {
+            var id = TimeOrderedUuidGenerator.next();
+            assertThat(seen.add(id)).isTrue();
+            // Unsigned comparison of the high half is the order a binary(16) index sees
+            assertThat(Long.compareUnsigned(id.getMostSignificantBits(), previous.getMostSignificantBits())).isPositive();
+            previous = id;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.ges.backend.common;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+// Random v4 vs time-ordered v7 primary keys: insert throughput and (on MySQL) table + index size.
+// Skipped unless run explicitly:
+//   mvn test -Dtest=UuidKeyBenchmarkTest -Dbenchmark=true [-Dbenchmark.rows=1000000]
+// Point it at MySQL with -Dspring.datasource.url=jdbc:mysql://...&rewriteBatchedStatements=true plus credentials;
+// sizes come from information_schema after ANALYZE TABLE and are reported as n/a elsewhere.
+@SpringBootTest
+@ActiveProfiles("test")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class UuidKeyBenchmarkTest {
+
+    @Autowired JdbcTemplate jdbc;
+
+    @Test
+    void compareRandomAndTimeOrderedKeys() {
+        int rows = Integer.getInteger("benchmark.rows", 1_000_000);
+        var v4 = run("bench_uuid_v4", rows, UUID::randomUUID);
+        var v7 = run("bench_uuid_v7", rows, TimeOrderedUuidGenerator::next);
+        System.out.printf("%d rows: v4 %.0f inserts/s, %s; v7 %.0f inserts/s, %s%n",
+                rows, v4.rate, v4.size, v7.rate, v7.size);
+    }
+
+    private record Result(double rate, String size) {}
+
+    private Result run(String table, int rows, Supplier<UUID> ids) {
+        jdbc.execute("drop table if exists " + table);
+        jdbc.execute("create table " + table + " (id binary(16) primary key, stock_item_id binary(16), quantity decimal(19,2))");
+        try {
+            var item = bytes(UUID.randomUUID());
+            long start = System.nanoTime();
+            for (int done = 0; done < rows; done += 1_000) {
+                var batch = new ArrayList<Object[]>(1_000);
+                for (int i = done; i < Math.min(rows, done + 1_000); i++) batch.add(new Object[]{bytes(ids.get()), item, i % 50});
+                jdbc.batchUpdate("insert into " + table + " (id, stock_item_id, quantity) values (?, ?, ?)", batch);
+            }
+            double rate = rows / ((System.nanoTime() - start) / 1e9);
+            return new Result(rate, size(table));
+        } finally {
+            jdbc.execute("drop table if exists " + table);
+        }
+    }
+
+    private String size(String table) {
+        try {
+            jdbc.queryForList("analyze table " + table);
+            Long bytes = jdbc.queryForObject(
+                    "select data_length + index_length from information_schema.tables where table_schema = database() and table_name = ?",
+                    Long.class, table);
+            return bytes != null ? (bytes / 1024 / 1024) + " MiB" : "size n/a";
+        } catch (RuntimeException e) {
+            return "size n/a";
+        }
+    }
+
+    private static byte[] bytes(UUID id) {
+        return ByteBuffer.allocate(16).putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits()).array();
+    }
+}
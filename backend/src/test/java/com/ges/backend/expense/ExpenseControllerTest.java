@@ -0,0 +1,80 @@
+package com.ges.backend.expense;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ges.backend.expense.dto.ExpenseDtos;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@WithMockUser(roles = "ADMIN")
+class ExpenseControllerTest {
+
+    @Autowired MockMvc mvc;
+    @Autowired ObjectMapper om;
+    @Autowired ExpenseService service;
+
+    @Test
+    void putHonoursIfMatch() throws Exception {
+        var created = service.create(new ExpenseDtos.Create("Gas", null, new BigDecimal("40"), LocalDate.of(2029, 5, 1)));
+        var body = om.writeValueAsString(new ExpenseDtos.Create("Gas", "Refill", new BigDecimal("45"), LocalDate.of(2029, 5, 1)));
+
+        var etag = mvc.perform(get("/api/expenses/" + created.getId()))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + created.getVersion() + "\""))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mvc.perform(put("/api/expenses/" + created.getId())
+                        .header(HttpHeaders.IF_MATCH, etag)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + (created.getVersion() + 1) + "\""));
+
+        // The first ETag is now stale
+        mvc.perform(put("/api/expenses/" + created.getId())
+                        .header(HttpHeaders.IF_MATCH, etag)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    void afterSwitchesToCursorModeAndPageStillWorks() throws Exception {
+        for (int d = 1; d <= 3; d++) service.create(new ExpenseDtos.Create("Cursor", null, BigDecimal.ONE, LocalDate.of(2047, 2, d)));
+
+        var next = om.readTree(mvc.perform(get("/api/expenses").param("after", "").param("size", "2").param("category", "Cursor"))
+                        .andExpect(status().isOk())
+                        .andExpect(jsonPath("$.content.length()").value(2))
+                        .andExpect(jsonPath("$.content[0].date").value("2047-02-03"))
+                        .andExpect(jsonPath("$.hasNext").value(true))
+                        .andReturn().getResponse().getContentAsString()).get("next").asText();
+
+        mvc.perform(get("/api/expenses").param("after", next).param("size", "2").param("category", "Cursor"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(1))
+                .andExpect(jsonPath("$.content[0].date").value("2047-02-01"))
+                .andExpect(jsonPath("$.hasNext").value(false));
+
+        mvc.perform(get("/api/expenses").param("after", "%%%"))
+                .andExpect(status().isBadRequest());
+
+        mvc.perform(get("/api/expenses").param("category", "Cursor"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalElements").value(3));
+    }
+}
@@ -0,0 +1,59 @@
+package com.ges.backend.expense;
+
+import com.ges.backend.common.CapturedSql;
+import com.ges.backend.expense.dto.ExpenseDtos;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector=com.ges.backend.common.CapturedSql")
+@ActiveProfiles("test")
+class ExpenseRepositoryTest {
+
+    @Autowired ExpenseRepository repo;
+    @Autowired EntityManager em;
+
+    @Test
+    void filtersByCategoryAndDateRange() {
+        repo.save(expense("Gas", LocalDate.of(2030, 5, 2)));
+        repo.save(expense("Gas", LocalDate.of(2030, 6, 2)));
+        repo.save(expense("Rent", LocalDate.of(2030, 5, 1)));
+
+        var may = new ExpenseDtos.Filter(LocalDate.of(2030, 5, 1), LocalDate.of(2030, 5, 31), null);
+        assertThat(repo.findAll(ExpenseRepository.matching(may), Pageable.unpaged())).hasSize(2);
+        var gasInMay = new ExpenseDtos.Filter(LocalDate.of(2030, 5, 1), LocalDate.of(2030, 5, 31), "Gas");
+        assertThat(repo.findAll(ExpenseRepository.matching(gasInMay), Pageable.unpaged())).hasSize(1);
+    }
+
+    @Test
+    void filteredListingUsesCompositeIndexes() {
+        var from = LocalDate.of(2030, 5, 1);
+        var to = LocalDate.of(2030, 5, 31);
+
+        assertThat(planOf(new ExpenseDtos.Filter(from, to, null), from, to)).containsIgnoringCase("idx_expense_date");
+        assertThat(planOf(new ExpenseDtos.Filter(from, to, "Gas"), from, to, "Gas")).containsIgnoringCase("idx_expense_category_date");
+    }
+
+    private String planOf(ExpenseDtos.Filter filter, Object... params) {
+        CapturedSql.clear();
+        repo.findAll(ExpenseRepository.matching(filter), PageRequest.of(0, 20));
+        return CapturedSql.explain(em, CapturedSql.lastSelectFrom("expense"), 20, params);
+    }
+
+    private static Expense expense(String category, LocalDate date) {
+        var e = new Expense();
+        e.setCategory(category);
+        e.setAmount(BigDecimal.TEN);
+        e.setDate(date);
+        return e;
+    }
+}
@@ -23,7 +23,7 @@ class ExpenseServiceTest {
         assertThat(created.getId()).isNotNull();
         assertThat(created.getCategory()).isEqualTo("Utilities");
 
-        var updated = service.update(created.getId(), new ExpenseDtos.Create("Utilities", "Water + sewer", new BigDecimal("60.00"), created.getDate()));
+        var updated = service.update(created.getId(), new ExpenseDtos.Create("Utilities", "Water + sewer", new BigDecimal("60.00"), created.getDate()), null);
         assertThat(updated.getAmount()).isEqualByComparingTo("60.00");
         assertThat(updated.getDescription()).contains("sewer");
     }
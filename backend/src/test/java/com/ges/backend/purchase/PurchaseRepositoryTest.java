@@ -1,24 +1,31 @@
 package com.ges.backend.purchase;
 
+import com.ges.backend.common.CapturedSql;
+import com.ges.backend.purchase.dto.PurchaseDtos;
 import com.ges.backend.stock.Category;
 import com.ges.backend.stock.StockItem;
 import com.ges.backend.stock.StockItemRepository;
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
-@DataJpaTest
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector=com.ges.backend.common.CapturedSql")
 @org.springframework.test.context.ActiveProfiles("test")
 class PurchaseRepositoryTest {
 
     @Autowired PurchaseRepository purchaseRepo;
     @Autowired StockItemRepository stockRepo;
+    @Autowired EntityManager em;
 
     @Test
     void saveAndLoadPurchaseWithItems() {
@@ -47,4 +54,40 @@ class PurchaseRepositoryTest {
         assertThat(loaded.getItems()).hasSize(1);
         assertThat(loaded.getItems().get(0).getPrice()).isEqualByComparingTo("3.00");
     }
+
+    @Test
+    void filtersBySupplierAndDateRange() {
+        var acme = UUID.randomUUID();
+        purchaseRepo.save(purchase(acme, LocalDate.of(2030, 3, 1)));
+        purchaseRepo.save(purchase(acme, LocalDate.of(2030, 4, 1)));
+        purchaseRepo.save(purchase(UUID.randomUUID(), LocalDate.of(2030, 3, 2)));
+
+        var march = new PurchaseDtos.Filter(LocalDate.of(2030, 3, 1), LocalDate.of(2030, 3, 31), acme);
+        assertThat(purchaseRepo.findAll(PurchaseRepository.matching(march), Pageable.unpaged())).hasSize(1);
+        assertThat(purchaseRepo.findAll(PurchaseRepository.matching(new PurchaseDtos.Filter(null, null, acme)), Pageable.unpaged())).hasSize(2);
+    }
+
+    @Test
+    void filteredListingUsesCompositeIndexes() {
+        var supplier = UUID.randomUUID();
+        var from = LocalDate.of(2030, 3, 1);
+        var to = LocalDate.of(2030, 3, 31);
+
+        assertThat(planOf(new PurchaseDtos.Filter(from, to, null), from, to)).containsIgnoringCase("idx_purchase_date");
+        assertThat(planOf(new PurchaseDtos.Filter(from, to, supplier), from, to, supplier)).containsIgnoringCase("idx_purchase_supplier_date");
+    }
+
+    private String planOf(PurchaseDtos.Filter filter, Object... params) {
+        CapturedSql.clear();
+        purchaseRepo.findAll(PurchaseRepository.matching(filter), PageRequest.of(0, 20));
+        return CapturedSql.explain(em, CapturedSql.lastSelectFrom("purchase"), 20, params);
+    }
+
+    private static Purchase purchase(UUID supplier, LocalDate date) {
+        var p = new Purchase();
+        p.setSupplierId(supplier);
+        p.setDate(date);
+        p.setTotalCost(BigDecimal.TEN);
+        return p;
+    }
 }
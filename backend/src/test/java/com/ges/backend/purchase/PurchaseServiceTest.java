@@ -1,17 +1,29 @@
 package com.ges.backend.purchase;
 
+import com.ges.backend.common.ExportFormat;
+import com.ges.backend.purchase.dto.PurchaseDtos;
 import com.ges.backend.stock.Category;
 import com.ges.backend.stock.StockItem;
 import com.ges.backend.stock.StockItemRepository;
+import com.ges.backend.stock.StockMovement;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 @SpringBootTest
 @ActiveProfiles("test")
@@ -19,6 +31,7 @@ class PurchaseServiceTest {
 
     @Autowired PurchaseService service;
     @Autowired StockItemRepository stockRepo;
+    @Autowired EntityManagerFactory entityManagerFactory;
 
     @Test
     void increasesStockOnPurchase() {
@@ -44,4 +57,201 @@ class PurchaseServiceTest {
         var updated = stockRepo.findById(saved.getId()).orElseThrow();
         assertThat(updated.getQuantity()).isEqualByComparingTo(new BigDecimal("25"));
     }
+
+    @Test
+    void exportsOneRowPerLineWithinRange() throws Exception {
+        var item = new StockItem();
+        item.setName("Beans");
+        item.setCategory(Category.FOOD);
+        item.setQuantity(new BigDecimal("0"));
+        item.setUnit("kg");
+        item.setUnitPrice(new BigDecimal("2.00"));
+        var saved = stockRepo.save(item);
+
+        var day = LocalDate.of(2031, 3, 4);
+        service.create(new PurchaseDtos.Create(UUID.randomUUID(), day, List.of(
+                new PurchaseDtos.Item(saved.getId(), new BigDecimal("2"), new BigDecimal("1.50")),
+                new PurchaseDtos.Item(saved.getId(), new BigDecimal("3"), new BigDecimal("1.75")))));
+        service.create(new PurchaseDtos.Create(UUID.randomUUID(), day.plusMonths(1), List.of(
+                new PurchaseDtos.Item(saved.getId(), new BigDecimal("1"), new BigDecimal("1.00")))));
+
+        var csv = new ByteArrayOutputStream();
+        assertThat(service.export(day, day, ExportFormat.CSV, csv)).isEqualTo(2);
+        var lines = csv.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(3);
+        assertThat(lines[0]).isEqualTo("purchaseId,date,supplierId,totalCost,stockItemId,quantity,price");
+        assertThat(lines).filteredOn(l -> l.contains("2031-03-04")).hasSize(2);
+        assertThat(lines).anyMatch(l -> l.endsWith(",1.50")).anyMatch(l -> l.endsWith(",1.75"));
+
+        var ndjson = new ByteArrayOutputStream();
+        assertThat(service.export(day, day.plusMonths(1), ExportFormat.NDJSON, ndjson)).isEqualTo(3);
+        assertThat(ndjson.toString(StandardCharsets.UTF_8).lines())
+                .hasSize(3)
+                .allSatisfy(line -> assertThat(line).startsWith("{\"purchaseId\":"));
+    }
+
+    @Test
+    void replacingLinesBumpsThePurchaseVersion() {
+        var item = new StockItem();
+        item.setName("Lentils");
+        item.setCategory(Category.FOOD);
+        item.setQuantity(new BigDecimal("0"));
+        item.setUnit("kg");
+        item.setUnitPrice(new BigDecimal("1.00"));
+        var saved = stockRepo.save(item);
+        var supplier = UUID.randomUUID();
+        var day = LocalDate.of(2030, 1, 1);
+
+        var purchase = service.create(new PurchaseDtos.Create(supplier, day, List.of(
+                new PurchaseDtos.Item(saved.getId(), new BigDecimal("2"), new BigDecimal("1.00")))));
+        var updated = service.update(purchase.getId(), new PurchaseDtos.Create(supplier, day, List.of(
+                new PurchaseDtos.Item(saved.getId(), new BigDecimal("1"), new BigDecimal("2.00")))), purchase.getVersion());
+
+        assertThat(updated.getVersion()).isGreaterThan(purchase.getVersion());
+    }
+
+    @Test
+    void mergesRepeatedLinesAndBatchesStockUpdates() {
+        var items = new ArrayList<StockItem>();
+        for (int i = 0; i < 20; i++) {
+            var item = new StockItem();
+            item.setName("Spice " + i);
+            item.setCategory(Category.INGREDIENTS);
+            item.setQuantity(new BigDecimal("1"));
+            item.setUnit("g");
+            item.setUnitPrice(new BigDecimal("0.10"));
+            items.add(stockRepo.save(item));
+        }
+        var stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        var day = LocalDate.of(2030, 6, 1);
+
+        // First purchase of the month seeds its rollup row; measure afterwards
+        service.create(new PurchaseDtos.Create(UUID.randomUUID(), day, lines(items.subList(0, 1), 1)));
+        stats.clear();
+        service.create(new PurchaseDtos.Create(UUID.randomUUID(), day, lines(items.subList(0, 2), 1)));
+        long small = stats.getPrepareStatementCount();
+
+        // 80 lines over 20 items, each item listed four times
+        stats.clear();
+        service.create(new PurchaseDtos.Create(UUID.randomUUID(), day, lines(items, 4)));
+        assertThat(stats.getPrepareStatementCount()).isEqualTo(small);
+        assertThat(stats.getEntityUpdateCount()).isEqualTo(20);
+
+        assertThat(stockRepo.findById(items.get(0).getId()).orElseThrow().getQuantity()).isEqualByComparingTo("7");
+        assertThat(stockRepo.findById(items.get(19).getId()).orElseThrow().getQuantity()).isEqualByComparingTo("5");
+    }
+
+    @Test
+    void rejectsEveryUnknownItemInOneError() {
+        var known = new StockItem();
+        known.setName("Known");
+        known.setCategory(Category.FOOD);
+        known.setQuantity(new BigDecimal("3"));
+        known.setUnit("kg");
+        known.setUnitPrice(new BigDecimal("1.00"));
+        var saved = stockRepo.save(known);
+        var missingA = UUID.randomUUID();
+        var missingB = UUID.randomUUID();
+
+        assertThatThrownBy(() -> service.create(new PurchaseDtos.Create(UUID.randomUUID(), LocalDate.of(2030, 6, 2), List.of(
+                new PurchaseDtos.Item(saved.getId(), BigDecimal.ONE, BigDecimal.ONE),
+                new PurchaseDtos.Item(missingA, BigDecimal.ONE, BigDecimal.ONE),
+                new PurchaseDtos.Item(missingB, BigDecimal.ONE, BigDecimal.ONE)))))
+                .isInstanceOfSatisfying(ResponseStatusException.class, e -> {
+                    assertThat(e.getStatusCode().value()).isEqualTo(404);
+                    assertThat(e.getReason()).contains(missingA.toString(), missingB.toString());
+                });
+        assertThat(stockRepo.findById(saved.getId()).orElseThrow().getQuantity()).isEqualByComparingTo("3");
+    }
+
+    @Test
+    void bulkImportReportsEachDocument() {
+        var item = new StockItem();
+        item.setName("Bulk flour");
+        item.setCategory(Category.FOOD);
+        item.setQuantity(new BigDecimal("0"));
+        item.setUnit("kg");
+        item.setUnitPrice(new BigDecimal("1.00"));
+        var saved = stockRepo.save(item);
+        var supplier = UUID.randomUUID();
+        var unknown = UUID.randomUUID();
+
+        // 250 documents span three chunks at the default batch size
+        var docs = new ArrayList<PurchaseDtos.Create>();
+        for (int i = 0; i < 250; i++) {
+            docs.add(new PurchaseDtos.Create(supplier, LocalDate.of(2042, 1 + i % 3, 5),
+                    List.of(new PurchaseDtos.Item(saved.getId(), new BigDecimal("2"), new BigDecimal("0.50")))));
+        }
+        docs.set(3, new PurchaseDtos.Create(supplier, null, docs.get(3).items()));
+        docs.set(7, new PurchaseDtos.Create(supplier, LocalDate.of(2042, 1, 5),
+                List.of(new PurchaseDtos.Item(unknown, BigDecimal.ONE, BigDecimal.ONE))));
+        docs.set(120, null);
+
+        var response = service.bulkCreate(docs);
+
+        assertThat(response.created()).isEqualTo(247);
+        assertThat(response.failed()).isEqualTo(3);
+        assertThat(response.results()).hasSize(250);
+        assertThat(response.results().get(3).error()).contains("date");
+        assertThat(response.results().get(7).error()).contains(unknown.toString());
+        assertThat(response.results().get(120).error()).isNotNull();
+        var ok = response.results().get(200);
+        assertThat(ok.index()).isEqualTo(200);
+        assertThat(service.get(ok.id()).getTotalCost()).isEqualByComparingTo("1.00");
+        assertThat(stockRepo.findById(saved.getId()).orElseThrow().getQuantity()).isEqualByComparingTo("494");
+    }
+
+    private static List<PurchaseDtos.Item> lines(List<StockItem> items, int repeats) {
+        var lines = new ArrayList<PurchaseDtos.Item>();
+        for (int r = 0; r < repeats; r++) {
+            for (var item : items) lines.add(new PurchaseDtos.Item(item.getId(), BigDecimal.ONE, new BigDecimal("0.10")));
+        }
+        return lines;
+    }
+
+    @Test
+    void correctingOneLineOnlyWritesThatLine() {
+        var items = new ArrayList<StockItem>();
+        for (int i = 0; i < 100; i++) {
+            var item = new StockItem();
+            item.setName("Crate " + i);
+            item.setCategory(Category.SUPPLIES);
+            item.setQuantity(new BigDecimal("0"));
+            item.setUnit("pcs");
+            item.setUnitPrice(new BigDecimal("1.00"));
+            items.add(stockRepo.save(item));
+        }
+        var supplier = UUID.randomUUID();
+        var day = LocalDate.of(2030, 9, 1);
+        var original = lines(items, 1);
+        var purchase = service.create(new PurchaseDtos.Create(supplier, day, original));
+
+        // Typo fix: line 42 should have been 3, not 1
+        var corrected = new ArrayList<>(original);
+        corrected.set(42, new PurchaseDtos.Item(items.get(42).getId(), new BigDecimal("3"), new BigDecimal("0.10")));
+        var stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        stats.clear();
+        var updated = service.update(purchase.getId(), new PurchaseDtos.Create(supplier, day, corrected), purchase.getVersion());
+
+        // The only insert is the ledger row for the one corrected item
+        assertThat(stats.getEntityStatistics(PurchaseItem.class.getName()).getInsertCount()).isZero();
+        assertThat(stats.getEntityStatistics(StockMovement.class.getName()).getInsertCount()).isEqualTo(1);
+        assertThat(stats.getEntityDeleteCount()).isZero();
+        assertThat(stats.getPrepareStatementCount()).isLessThan(13);
+        assertThat(updated.getTotalCost()).isEqualByComparingTo("10.20");
+        assertThat(stockRepo.findById(items.get(42).getId()).orElseThrow().getQuantity()).isEqualByComparingTo("3");
+        assertThat(stockRepo.findById(items.get(41).getId()).orElseThrow().getQuantity()).isEqualByComparingTo("1");
+
+        // Dropping a line and adding another item only removes and inserts those rows
+        var reshaped = new ArrayList<>(corrected.subList(1, 100));
+        reshaped.add(new PurchaseDtos.Item(items.get(5).getId(), new BigDecimal("2"), new BigDecimal("0.10")));
+        stats.clear();
+        var again = service.update(purchase.getId(), new PurchaseDtos.Create(supplier, day, reshaped), null);
+        assertThat(stats.getEntityStatistics(PurchaseItem.class.getName()).getInsertCount()).isEqualTo(1);
+        assertThat(stats.getEntityStatistics(StockMovement.class.getName()).getInsertCount()).isEqualTo(2);
+        assertThat(stats.getEntityDeleteCount()).isEqualTo(1);
+        assertThat(again.getItems()).hasSize(100);
+        assertThat(stockRepo.findById(items.get(0).getId()).orElseThrow().getQuantity()).isEqualByComparingTo("0");
+        assertThat(stockRepo.findById(items.get(5).getId()).orElseThrow().getQuantity()).isEqualByComparingTo("3");
+    }
 }
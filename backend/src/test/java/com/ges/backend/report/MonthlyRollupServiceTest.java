@@ -0,0 +1,79 @@
+package com.ges.backend.report;
+
+import com.ges.backend.expense.Expense;
+import com.ges.backend.expense.ExpenseRepository;
+import com.ges.backend.expense.ExpenseService;
+import com.ges.backend.expense.dto.ExpenseDtos;
+import com.ges.backend.stock.Category;
+import com.ges.backend.stock.StockItemRepository;
+import com.ges.backend.stock.StockItemService;
+import com.ges.backend.stock.dto.StockDtos;
+import com.ges.backend.usage.UsageService;
+import com.ges.backend.usage.dto.UsageDtos;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class MonthlyRollupServiceTest {
+
+    @Autowired MonthlyRollupService rollups;
+    @Autowired ExpenseService expenseService;
+    @Autowired ExpenseRepository expenseRepo;
+    @Autowired StockItemService stockService;
+    @Autowired StockItemRepository stockRepo;
+    @Autowired UsageService usageService;
+
+    @Test
+    void rollupFollowsWritesAndRebuildRepairsDrift() {
+        var march = YearMonth.of(2019, 3);
+        var april = YearMonth.of(2019, 4);
+
+        var e = expenseService.create(new ExpenseDtos.Create("Gas", null, new BigDecimal("40"), march.atDay(10)));
+        assertThat(rollups.current(march).getExpenses()).isEqualByComparingTo("40");
+
+        // Moving the expense to another month moves its amount with it
+        expenseService.update(e.getId(), new ExpenseDtos.Create("Gas", null, new BigDecimal("55"), april.atDay(2)), null);
+        assertThat(rollups.current(march).getExpenses()).isEqualByComparingTo("0");
+        assertThat(rollups.current(april).getExpenses()).isEqualByComparingTo("55");
+
+        expenseService.delete(e.getId());
+        assertThat(rollups.current(april).getExpenses()).isEqualByComparingTo("0");
+
+        // A write that bypasses the service leaves the rollup stale until it is rebuilt
+        var direct = new Expense();
+        direct.setCategory("Gas");
+        direct.setAmount(new BigDecimal("12"));
+        direct.setDate(april.atDay(20));
+        expenseRepo.save(direct);
+        assertThat(rollups.current(april).getExpenses()).isEqualByComparingTo("0");
+
+        assertThat(rollups.rebuild()).isGreaterThanOrEqualTo(2);
+        assertThat(rollups.current(april).getExpenses()).isEqualByComparingTo("12");
+        assertThat(rollups.current(march).getExpenses()).isEqualByComparingTo("0");
+    }
+
+    @Test
+    void rebuildKeepsSalesAtTheRecordedPrices() {
+        var month = YearMonth.of(2049, 2);
+        var honey = stockService.create(new StockDtos.Create(
+                "Honey", Category.INGREDIENTS, new BigDecimal("10"), "kg", new BigDecimal("2.00"), null));
+        usageService.create(new UsageDtos.Create(honey.getId(), new BigDecimal("4"), month.atDay(3), null), "tester");
+        var maintained = rollups.current(month).getSalesValue();
+        assertThat(maintained).isEqualByComparingTo("8.00");
+
+        var repriced = stockRepo.findById(honey.getId()).orElseThrow();
+        repriced.setUnitPrice(new BigDecimal("9.00"));
+        stockRepo.save(repriced);
+
+        rollups.rebuild();
+        assertThat(rollups.current(month).getSalesValue()).isEqualByComparingTo(maintained);
+    }
+}
@@ -0,0 +1,56 @@
+package com.ges.backend.report;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReportCacheTest {
+
+    private static MonthTotals totals(String purchases) {
+        return new MonthTotals(new BigDecimal(purchases), BigDecimal.ZERO, 0, BigDecimal.ZERO);
+    }
+
+    @Test
+    void servesRepeatsFromMemoryAndEvictsLeastRecentlyUsed() {
+        var cache = new ReportCache(2);
+        var loads = new AtomicInteger();
+        var jan = YearMonth.of(2024, 1);
+        var feb = YearMonth.of(2024, 2);
+        var mar = YearMonth.of(2024, 3);
+
+        cache.get(jan, m -> { loads.incrementAndGet(); return totals("1"); });
+        cache.get(feb, m -> { loads.incrementAndGet(); return totals("2"); });
+        assertThat(cache.get(jan, m -> { loads.incrementAndGet(); return totals("x"); }).purchases()).isEqualByComparingTo("1");
+        cache.get(mar, m -> { loads.incrementAndGet(); return totals("3"); }); // evicts feb, jan was used more recently
+
+        cache.get(jan, m -> { loads.incrementAndGet(); return totals("x"); });
+        cache.get(feb, m -> { loads.incrementAndGet(); return totals("2"); });
+
+        var stats = cache.stats();
+        assertThat(loads).hasValue(4);
+        assertThat(stats.hits()).isEqualTo(2);
+        assertThat(stats.misses()).isEqualTo(4);
+        assertThat(stats.evictions()).isEqualTo(2);
+        assertThat(stats.size()).isEqualTo(2);
+    }
+
+    @Test
+    void invalidationDuringLoadKeepsTheStaleValueOutOfTheCache() {
+        var cache = new ReportCache(10);
+        var month = YearMonth.of(2024, 5);
+
+        cache.get(month, m -> {
+            cache.invalidate(m); // a write commits while the old totals are being read
+            return totals("1");
+        });
+        assertThat(cache.get(month, m -> totals("2")).purchases()).isEqualByComparingTo("2");
+
+        cache.invalidate(month);
+        assertThat(cache.get(month, m -> totals("3")).purchases()).isEqualByComparingTo("3");
+        assertThat(cache.stats().invalidations()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,90 @@
+package com.ges.backend.report;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class ReportJobServiceTest {
+
+    @Autowired ReportJobService jobs;
+    @Autowired ReportService reports;
+
+    @Test
+    void runsRangeJobInBackground() throws Exception {
+        var job = jobs.submit(new ReportJobRequest(ReportJobType.RANGE, "2019-01", "2021-12"), "ana");
+        assertThat(job.getId()).isNotNull();
+
+        var deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!jobs.get(job.getId(), "ana").isFinished() && System.nanoTime() < deadline) Thread.sleep(20);
+
+        var done = jobs.get(job.getId(), "ana");
+        assertThat(done.getStatus()).isEqualTo(ReportJob.Status.SUCCEEDED);
+        var range = (RangeReport) done.getResult();
+        assertThat(range.months()).hasSize(36);
+        assertThat(range.total().month()).isEqualTo("2019-01..2021-12");
+    }
+
+    @Test
+    void rejectsInvalidParametersBeforeQueueing() {
+        assertThatThrownBy(() -> jobs.submit(new ReportJobRequest(ReportJobType.RANGE, "2021-05", "2021-01"), "ana"))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode().value()).isEqualTo(400));
+        assertThatThrownBy(() -> jobs.submit(new ReportJobRequest(ReportJobType.RANGE, "May", "2021-01"), "ana"))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode().value()).isEqualTo(400));
+    }
+
+    @Test
+    void fullQueueAnswersServiceUnavailable() {
+        var saturated = new ReportJobService(reports, task -> { throw new RejectedExecutionException(); }, Duration.ofHours(1));
+
+        assertThatThrownBy(() -> saturated.submit(new ReportJobRequest(ReportJobType.RANGE, "2021-01", "2021-02"), "ana"))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode().value()).isEqualTo(503));
+    }
+
+    @Test
+    void unknownJobIsNotFound() {
+        assertThatThrownBy(() -> jobs.get(UUID.randomUUID(), "ana"))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode().value()).isEqualTo(404));
+    }
+
+    @Test
+    void onlyTheSubmitterCanReadAJob() {
+        var job = jobs.submit(new ReportJobRequest(ReportJobType.RANGE, "2021-01", "2021-02"), "ana");
+
+        assertThat(jobs.get(job.getId(), "ana").getId()).isEqualTo(job.getId());
+        assertThatThrownBy(() -> jobs.get(job.getId(), "ben"))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode().value()).isEqualTo(404));
+    }
+
+    @Test
+    void finishedJobsAreEvictedWithoutAnotherSubmit() throws Exception {
+        var expiring = new ReportJobService(reports, Runnable::run, Duration.ZERO);
+        var done = expiring.submit(new ReportJobRequest(ReportJobType.RANGE, "2021-01", "2021-02"), "ana");
+        var unread = expiring.submit(new ReportJobRequest(ReportJobType.RANGE, "2021-03", "2021-04"), "ana");
+        Thread.sleep(5);
+
+        // Read after expiry: dropped on the spot
+        assertThatThrownBy(() -> expiring.get(done.getId(), "ana"))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode().value()).isEqualTo(404));
+        // Never read: dropped by the scheduled sweep
+        expiring.evictExpired();
+        assertThatThrownBy(() -> expiring.get(unread.getId(), "ana"))
+                .isInstanceOf(ResponseStatusException.class);
+    }
+}
@@ -1,62 +1,244 @@
 package com.ges.backend.report;
 
-import com.ges.backend.expense.Expense;
-import com.ges.backend.expense.ExpenseRepository;
+import com.ges.backend.expense.ExpenseService;
+import com.ges.backend.expense.dto.ExpenseDtos;
+import com.ges.backend.purchase.PurchaseService;
+import com.ges.backend.purchase.dto.PurchaseDtos;
 import com.ges.backend.stock.Category;
-import com.ges.backend.stock.StockItem;
-import com.ges.backend.stock.StockItemRepository;
-import com.ges.backend.usage.Usage;
-import com.ges.backend.usage.UsageRepository;
+import com.ges.backend.stock.StockItemService;
+import com.ges.backend.stock.dto.StockDtos;
+import com.ges.backend.usage.UsageService;
+import com.ges.backend.usage.dto.UsageDtos;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.YearMonth;
+import java.util.List;
+import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 @SpringBootTest
 @ActiveProfiles("test")
 class ReportServiceTest {
 
     @Autowired ReportService reportService;
-    @Autowired StockItemRepository stockRepo;
-    @Autowired ExpenseRepository expenseRepo;
-    @Autowired UsageRepository usageRepo;
+    @Autowired StockItemService stockService;
+    @Autowired ExpenseService expenseService;
+    @Autowired UsageService usageService;
+    @Autowired PurchaseService purchaseService;
+    @Autowired EntityManagerFactory entityManagerFactory;
+    @Autowired MonthlyRollupRepository rollupRepo;
+    @Autowired MonthlyRollupService rollups;
 
     @Test
     void monthlyReportAggregatesValues() {
         var month = YearMonth.now();
         var before = reportService.monthly(month.toString());
 
-        var stock = new StockItem();
-        stock.setName("Sugar");
-        stock.setCategory(Category.INGREDIENTS);
-        stock.setQuantity(new BigDecimal("5"));
-        stock.setUnit("kg");
-        stock.setUnitPrice(new BigDecimal("2.00"));
-        var savedStock = stockRepo.save(stock);
-
-        var exp = new Expense();
-        exp.setCategory("Misc");
-        exp.setAmount(new BigDecimal("10"));
-        exp.setDate(LocalDate.now());
-        expenseRepo.save(exp);
-
-        var usage = new Usage();
-        usage.setStockItemId(savedStock.getId());
-        usage.setQuantityUsed(new BigDecimal("2"));
-        usage.setDate(LocalDate.now());
-        usageRepo.save(usage);
+        var savedStock = stockService.create(new StockDtos.Create(
+                "Sugar", Category.INGREDIENTS, new BigDecimal("5"), "kg", new BigDecimal("2.00"), null));
+
+        expenseService.create(new ExpenseDtos.Create("Misc", null, new BigDecimal("10"), LocalDate.now()));
+        usageService.create(new UsageDtos.Create(savedStock.getId(), new BigDecimal("2"), LocalDate.now(), null), "tester");
         
         // Perform inserts
         var report = reportService.monthly(month.toString());
         assertThat(report).isNotNull();
-        assertThat(report.totalStockValue().subtract(before.totalStockValue())).isEqualByComparingTo("10.00");
+        assertThat(report.totalStockValue().subtract(before.totalStockValue())).isEqualByComparingTo("6.00");
         assertThat(report.expenses().subtract(before.expenses())).isEqualByComparingTo("10.00");
         assertThat(report.estimatedSalesValue().subtract(before.estimatedSalesValue())).isEqualByComparingTo("4.00");
+        assertThat(report.usageCount() - before.usageCount()).isEqualTo(1);
+    }
+
+    @Test
+    void monthlyReportOnlyCountsRecordsInsideTheMonth() {
+        var month = YearMonth.of(2021, 3);
+        var before = reportService.monthly(month.toString());
+
+        expenseService.create(new ExpenseDtos.Create("Rent", null, new BigDecimal("100"), month.atEndOfMonth()));
+        expenseService.create(new ExpenseDtos.Create("Rent", null, new BigDecimal("999"), month.plusMonths(1).atDay(1)));
+
+        var report = reportService.monthly(month.toString());
+        assertThat(report.month()).isEqualTo("2021-03");
+        assertThat(report.expenses().subtract(before.expenses())).isEqualByComparingTo("100");
+    }
+
+    @Test
+    void monthlyReportStatementCountDoesNotGrowWithUsages() {
+        var month = YearMonth.of(2022, 7);
+        var stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        var savedStock = stockService.create(new StockDtos.Create(
+                "Flour", Category.INGREDIENTS, new BigDecimal("100"), "kg", new BigDecimal("1.50"), null));
+
+        usageService.create(new UsageDtos.Create(savedStock.getId(), BigDecimal.ONE, month.atDay(1), null), "tester");
+        stats.clear();
+        reportService.monthly(month.toString());
+        long statementsBefore = stats.getPrepareStatementCount();
+
+        for (int i = 1; i < 25; i++) {
+            usageService.create(new UsageDtos.Create(savedStock.getId(), BigDecimal.ONE, month.atDay(1 + i), null), "tester");
+        }
+
+        stats.clear();
+        var report = reportService.monthly(month.toString());
+        assertThat(stats.getPrepareStatementCount()).isEqualTo(statementsBefore);
+        assertThat(report.estimatedSalesValue()).isEqualByComparingTo("37.50");
+    }
+
+    @Test
+    void rollupSeedStatementCountDoesNotGrowWithUsages() {
+        // Seeding a month (as a rebuild does) prices its usages with one joined aggregate, however many there are
+        var quiet = YearMonth.of(2050, 3);
+        var busy = YearMonth.of(2050, 4);
+        var stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        var cocoa = stockService.create(new StockDtos.Create(
+                "Cocoa", Category.INGREDIENTS, new BigDecimal("100"), "kg", new BigDecimal("1.50"), null));
+        usageService.create(new UsageDtos.Create(cocoa.getId(), BigDecimal.ONE, quiet.atDay(1), null), "tester");
+        for (int i = 0; i < 25; i++) {
+            usageService.create(new UsageDtos.Create(cocoa.getId(), BigDecimal.ONE, busy.atDay(1 + i), null), "tester");
+        }
+        rollupRepo.deleteById(quiet.toString());
+        rollupRepo.deleteById(busy.toString());
+
+        stats.clear();
+        assertThat(rollups.current(quiet).getSalesValue()).isEqualByComparingTo("1.50");
+        long statementsForOne = stats.getPrepareStatementCount();
+        stats.clear();
+        assertThat(rollups.current(busy).getSalesValue()).isEqualByComparingTo("37.50");
+        assertThat(stats.getPrepareStatementCount()).isEqualTo(statementsForOne);
+    }
+
+    @Test
+    void rangeReportReturnsEveryMonthAndAGrandTotal() {
+        var jan = YearMonth.of(2020, 1);
+        var mar = YearMonth.of(2020, 3);
+        expenseService.create(new ExpenseDtos.Create("Rent", null, new BigDecimal("300"), jan.atDay(15)));
+        expenseService.create(new ExpenseDtos.Create("Rent", null, new BigDecimal("200"), mar.atDay(1)));
+        expenseService.create(new ExpenseDtos.Create("Rent", null, new BigDecimal("50"), mar.plusMonths(1).atDay(1)));
+        var oil = stockService.create(new StockDtos.Create(
+                "Oil", Category.INGREDIENTS, new BigDecimal("10"), "l", new BigDecimal("3.00"), null));
+        usageService.create(new UsageDtos.Create(oil.getId(), new BigDecimal("2"), mar.atDay(5), null), "tester");
+
+        var range = reportService.range(jan.toString(), mar.toString());
+        assertThat(range.months()).extracting(MonthlyReport::month).containsExactly("2020-01", "2020-02", "2020-03");
+        assertThat(range.months()).extracting(MonthlyReport::expenses)
+                .usingElementComparator(BigDecimal::compareTo)
+                .containsExactly(new BigDecimal("300"), BigDecimal.ZERO, new BigDecimal("200"));
+        assertThat(range.total().expenses()).isEqualByComparingTo("500");
+        assertThat(range.months().get(2).usageCount()).isEqualTo(1);
+        assertThat(range.total().estimatedSalesValue()).isEqualByComparingTo("6.00");
+        assertThat(range.months().get(0).expenses()).isEqualByComparingTo(reportService.monthly("2020-01").expenses());
+    }
+
+    @Test
+    void rangeAndMonthlyAgreeAfterAPriceChange() {
+        var month = YearMonth.of(2019, 4);
+        var salt = stockService.create(new StockDtos.Create(
+                "Salt", Category.INGREDIENTS, new BigDecimal("10"), "kg", new BigDecimal("1.00"), null));
+        usageService.create(new UsageDtos.Create(salt.getId(), new BigDecimal("3"), month.atDay(10), null), "tester");
+
+        stockService.update(salt.getId(), new StockDtos.Create(
+                "Salt", Category.INGREDIENTS, new BigDecimal("7"), "kg", new BigDecimal("5.00"), null), null);
+
+        var monthly = reportService.monthly(month.toString());
+        var range = reportService.range(month.toString(), month.toString());
+        assertThat(monthly.estimatedSalesValue()).isEqualByComparingTo("3.00");
+        assertThat(range.months().getFirst().estimatedSalesValue()).isEqualByComparingTo(monthly.estimatedSalesValue());
+        assertThat(range.months().getFirst().profit()).isEqualByComparingTo(monthly.profit());
+        assertThat(range.months().getFirst().usageCount()).isEqualTo(monthly.usageCount());
+    }
+
+    @Test
+    void rangeIsCappedAndReadingItPersistsNothing() {
+        assertThatThrownBy(() -> reportService.range("0001-01", "9999-12"))
+                .isInstanceOfSatisfying(ResponseStatusException.class, e -> assertThat(e.getStatusCode().value()).isEqualTo(400));
+
+        var from = YearMonth.of(2100, 1);
+        var to = from.plusMonths(ReportService.MAX_RANGE_MONTHS - 1);
+        expenseService.create(new ExpenseDtos.Create("Rent", null, new BigDecimal("70"), from.plusMonths(5).atDay(3)));
+        rollupRepo.deleteById(from.plusMonths(5).toString());
+        long rows = rollupRepo.count();
+
+        var range = reportService.range(from.toString(), to.toString());
+        assertThat(range.months()).hasSize(ReportService.MAX_RANGE_MONTHS);
+        assertThat(range.months().get(5).expenses()).isEqualByComparingTo("70");
+        assertThat(range.total().expenses()).isEqualByComparingTo("70");
+        assertThat(rollupRepo.count()).isEqualTo(rows);
+    }
+
+    @Test
+    void breakdownGroupsByItemAndCategory() {
+        var day = LocalDate.of(2018, 6, 10);
+        var lime = stockService.create(new StockDtos.Create(
+                "Lime", Category.FOOD, new BigDecimal("20"), "pc", new BigDecimal("0.50"), null));
+        var soda = stockService.create(new StockDtos.Create(
+                "Soda", Category.DRINKS, new BigDecimal("10"), "can", new BigDecimal("1.20"), null));
+        purchaseService.create(new PurchaseDtos.Create(UUID.randomUUID(), day, List.of(
+                new PurchaseDtos.Item(lime.getId(), new BigDecimal("10"), new BigDecimal("0.40")),
+                new PurchaseDtos.Item(soda.getId(), new BigDecimal("6"), new BigDecimal("1.00")))));
+        usageService.create(new UsageDtos.Create(lime.getId(), new BigDecimal("4"), day, null), "tester");
+        usageService.create(new UsageDtos.Create(lime.getId(), new BigDecimal("2"), day.plusDays(1), null), "tester");
+        usageService.create(new UsageDtos.Create(soda.getId(), new BigDecimal("3"), day.plusYears(1), null), "tester");
+
+        var report = reportService.breakdown(day, day.plusDays(1));
+
+        var limeLine = report.items().stream().filter(i -> i.stockItemId().equals(lime.getId())).findFirst().orElseThrow();
+        assertThat(limeLine.category()).isEqualTo(Category.FOOD);
+        assertThat(limeLine.purchases()).isEqualByComparingTo("4.00");
+        assertThat(limeLine.usageQuantity()).isEqualByComparingTo("6");
+        assertThat(limeLine.usageValue()).isEqualByComparingTo("3.00");
+        assertThat(limeLine.stockValue()).isEqualByComparingTo("12.00");
+
+        var sodaLine = report.items().stream().filter(i -> i.stockItemId().equals(soda.getId())).findFirst().orElseThrow();
+        assertThat(sodaLine.purchases()).isEqualByComparingTo("6.00");
+        assertThat(sodaLine.usageQuantity()).isEqualByComparingTo("0");
+
+        var drinks = report.categories().stream().filter(c -> c.category() == Category.DRINKS).findFirst().orElseThrow();
+        var drinksFromItems = report.items().stream().filter(i -> i.category() == Category.DRINKS)
+                .map(BreakdownReport.ItemLine::stockValue).reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertThat(drinks.stockValue()).isEqualByComparingTo(drinksFromItems);
+        assertThat(report.total().purchases()).isEqualByComparingTo(report.categories().stream()
+                .map(BreakdownReport.CategoryLine::purchases).reduce(BigDecimal.ZERO, BigDecimal::add));
+    }
+
+    @Test
+    void topRanksItemsAndSuppliersWithinTheLimit() {
+        var day = LocalDate.of(2017, 2, 1);
+        var tea = stockService.create(new StockDtos.Create(
+                "Tea", Category.DRINKS, new BigDecimal("100"), "g", new BigDecimal("0.10"), null));
+        var steak = stockService.create(new StockDtos.Create(
+                "Steak", Category.FOOD, new BigDecimal("100"), "pc", new BigDecimal("9.00"), null));
+        var salt = stockService.create(new StockDtos.Create(
+                "Salt", Category.INGREDIENTS, new BigDecimal("100"), "g", new BigDecimal("0.01"), null));
+        usageService.create(new UsageDtos.Create(tea.getId(), new BigDecimal("50"), day, null), "tester");
+        usageService.create(new UsageDtos.Create(steak.getId(), new BigDecimal("3"), day, null), "tester");
+        usageService.create(new UsageDtos.Create(salt.getId(), new BigDecimal("1"), day, null), "tester");
+        var bigSupplier = UUID.randomUUID();
+        purchaseService.create(new PurchaseDtos.Create(bigSupplier, day, List.of(
+                new PurchaseDtos.Item(steak.getId(), new BigDecimal("10"), new BigDecimal("8.00")))));
+        purchaseService.create(new PurchaseDtos.Create(UUID.randomUUID(), day, List.of(
+                new PurchaseDtos.Item(salt.getId(), new BigDecimal("10"), new BigDecimal("0.01")))));
+
+        var byQuantity = reportService.top(day, day, 2, "quantity");
+        assertThat(byQuantity.items()).extracting(UsageDtos.ItemConsumption::name).containsExactly("Tea", "Steak");
+        assertThat(byQuantity.suppliers()).hasSize(2);
+        assertThat(byQuantity.suppliers().get(0).supplierId()).isEqualTo(bigSupplier);
+        assertThat(byQuantity.suppliers().get(0).spend()).isEqualByComparingTo("80.00");
+
+        var byValue = reportService.top(day, day, 1, "value");
+        assertThat(byValue.items()).singleElement().satisfies(i -> {
+            assertThat(i.name()).isEqualTo("Steak");
+            assertThat(i.value()).isEqualByComparingTo("27.00");
+        });
     }
 }
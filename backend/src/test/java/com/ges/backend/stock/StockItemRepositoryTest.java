@@ -37,4 +37,52 @@ class StockItemRepositoryTest {
         Page<StockItem> page = repo.findByNameContainingIgnoreCase("sugar", PageRequest.of(0, 10));
         assertThat(page.getTotalElements()).isEqualTo(2);
     }
+
+    @Test
+    void findByLowStockTrue_tracksQuantityAgainstReorderLevel() {
+        var low = new StockItem();
+        low.setName("Salt");
+        low.setCategory(Category.INGREDIENTS);
+        low.setQuantity(new BigDecimal("2"));
+        low.setUnit("kg");
+        low.setUnitPrice(new BigDecimal("1"));
+        low.setReorderLevel(new BigDecimal("5"));
+        repo.saveAndFlush(low);
+
+        var noLevel = new StockItem();
+        noLevel.setName("Pepper");
+        noLevel.setCategory(Category.INGREDIENTS);
+        noLevel.setQuantity(new BigDecimal("0"));
+        noLevel.setUnit("kg");
+        noLevel.setUnitPrice(new BigDecimal("1"));
+        repo.saveAndFlush(noLevel);
+
+        assertThat(repo.findByLowStockTrue(PageRequest.of(0, 10)).getContent())
+                .extracting(StockItem::getName).containsExactly("Salt");
+
+        low.setQuantity(new BigDecimal("8"));
+        repo.saveAndFlush(low);
+        assertThat(repo.countByLowStockTrue()).isZero();
+    }
+
+    @Test
+    void atomicQuantityUpdates_keepLowStockFlagAndRefuseToOversell() {
+        var oil = new StockItem();
+        oil.setName("Oil");
+        oil.setCategory(Category.INGREDIENTS);
+        oil.setQuantity(new BigDecimal("6"));
+        oil.setUnit("l");
+        oil.setUnitPrice(new BigDecimal("3"));
+        oil.setReorderLevel(new BigDecimal("5"));
+        var id = repo.saveAndFlush(oil).getId();
+
+        assertThat(repo.removeQuantity(id, new BigDecimal("2"))).isEqualTo(1);
+        assertThat(repo.removeQuantity(id, new BigDecimal("5"))).isZero();
+        assertThat(repo.findLevel(id).orElseThrow().quantity()).isEqualByComparingTo("4");
+        assertThat(repo.countByLowStockTrue()).isEqualTo(1);
+
+        assertThat(repo.addQuantity(id, new BigDecimal("10"))).isEqualTo(1);
+        assertThat(repo.findLevel(id).orElseThrow().quantity()).isEqualByComparingTo("14");
+        assertThat(repo.countByLowStockTrue()).isZero();
+    }
 }
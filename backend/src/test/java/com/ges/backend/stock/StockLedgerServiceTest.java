@@ -0,0 +1,70 @@
+package com.ges.backend.stock;
+
+import com.ges.backend.stock.dto.StockDtos;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class StockLedgerServiceTest {
+
+    @Autowired StockLedgerService ledger;
+    @Autowired StockItemService stock;
+    @Autowired StockMovementRepository movements;
+
+    @Test
+    void pointInTimeLevelsComeFromSnapshotPlusMovements() throws Exception {
+        var item = stock.create(new StockDtos.Create("Ledger sugar", Category.FOOD, new BigDecimal("10"), "kg", new BigDecimal("2.00"), null));
+        var usage = UUID.randomUUID();
+        tick();
+        stock.consume(item.getId(), new BigDecimal("4"), MovementSource.USAGE, usage);
+        var afterUsage = tick();
+
+        ledger.takeSnapshot(afterUsage);
+        stock.adjustQuantity(item.getId(), new BigDecimal("7"), MovementSource.PURCHASE, UUID.randomUUID());
+        var afterPurchase = tick();
+        // Reverting the usage is one more ledger row, not a rewrite of the earlier one
+        stock.adjustQuantity(item.getId(), new BigDecimal("4"), MovementSource.USAGE, usage);
+
+        assertThat(levelOf(item, afterUsage)).isEqualByComparingTo("6");
+        assertThat(levelOf(item, afterPurchase)).isEqualByComparingTo("13");
+        assertThat(levelOf(item, tick())).isEqualByComparingTo("17").isEqualByComparingTo(stock.get(item.getId()).getQuantity());
+        assertThat(ledger.levelsAt(afterUsage).stream().filter(l -> l.id().equals(item.getId())).findFirst().orElseThrow().value())
+                .isEqualByComparingTo("12.00");
+
+        var history = movements.findByStockItemIdOrderByOccurredAtDesc(item.getId(), Pageable.unpaged());
+        assertThat(history.map(StockMovement::getSourceType))
+                .containsExactly(MovementSource.USAGE, MovementSource.PURCHASE, MovementSource.USAGE, MovementSource.ADJUSTMENT);
+    }
+
+    @Test
+    void snapshotIsTakenOncePerCutoff() {
+        stock.create(new StockDtos.Create("Ledger salt", Category.FOOD, new BigDecimal("3"), "kg", new BigDecimal("1.00"), null));
+        var cutoff = Instant.now().truncatedTo(ChronoUnit.SECONDS).minusSeconds(3600);
+
+        assertThat(ledger.takeSnapshot(cutoff)).isPositive();
+        assertThat(ledger.takeSnapshot(cutoff)).isZero();
+    }
+
+    private BigDecimal levelOf(StockItem item, Instant at) {
+        return ledger.levelsAt(at).stream().filter(l -> l.id().equals(item.getId())).findFirst().orElseThrow().quantity();
+    }
+
+    // Separates consecutive writes so each lands strictly before the returned instant and the next after it
+    private static Instant tick() throws InterruptedException {
+        Thread.sleep(2);
+        var now = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        Thread.sleep(2);
+        return now;
+    }
+}
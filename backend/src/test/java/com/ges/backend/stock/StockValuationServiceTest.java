@@ -0,0 +1,56 @@
+package com.ges.backend.stock;
+
+import com.ges.backend.purchase.PurchaseService;
+import com.ges.backend.purchase.dto.PurchaseDtos;
+import com.ges.backend.stock.dto.StockDtos;
+import com.ges.backend.usage.UsageService;
+import com.ges.backend.usage.dto.UsageDtos;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class StockValuationServiceTest {
+
+    @Autowired StockValuationService valuation;
+    @Autowired StockItemService stockService;
+    @Autowired PurchaseService purchaseService;
+    @Autowired UsageService usageService;
+
+    @Test
+    void maintainedValuationMatchesRecomputeAfterEveryKindOfWrite() {
+        // Other tests write stock rows directly through the repository, so start from a clean baseline
+        var start = valuation.rebuild();
+
+        var item = stockService.create(new StockDtos.Create(
+                "Cola", Category.DRINKS, new BigDecimal("10"), "pcs", new BigDecimal("1.25"), null));
+        assertThat(valuation.current().total().subtract(start.total())).isEqualByComparingTo("12.50");
+
+        purchaseService.create(new PurchaseDtos.Create(UUID.randomUUID(), LocalDate.now(),
+                List.of(new PurchaseDtos.Item(item.getId(), new BigDecimal("4"), new BigDecimal("1.00")))));
+        usageService.create(new UsageDtos.Create(item.getId(), new BigDecimal("3"), LocalDate.now(), null), "tester");
+        assertThat(valuation.current().byCategory().get(Category.DRINKS)
+                .subtract(start.byCategory().get(Category.DRINKS))).isEqualByComparingTo("13.75");
+
+        // Price and category changes move value between categories
+        stockService.update(item.getId(), new StockDtos.Create(
+                "Cola", Category.FOOD, new BigDecimal("11"), "pcs", new BigDecimal("2.00"), null), null);
+        var afterMove = valuation.current();
+        assertThat(afterMove.byCategory().get(Category.DRINKS)).isEqualByComparingTo(start.byCategory().get(Category.DRINKS));
+        assertThat(afterMove.byCategory().get(Category.FOOD).subtract(start.byCategory().get(Category.FOOD))).isEqualByComparingTo("22.00");
+        assertThat(valuation.verify().consistent()).isTrue();
+
+        stockService.delete(item.getId());
+        assertThat(valuation.current().total()).isEqualByComparingTo(start.total());
+        assertThat(valuation.verify().consistent()).isTrue();
+    }
+}
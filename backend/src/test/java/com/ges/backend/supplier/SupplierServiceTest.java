@@ -4,9 +4,11 @@ import com.ges.backend.supplier.dto.SupplierDtos;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.ActiveProfiles;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 @SpringBootTest
 @ActiveProfiles("test")
@@ -22,4 +24,17 @@ class SupplierServiceTest {
         var got = service.get(s.getId());
         assertThat(got.getName()).isEqualTo("ABC Ltd");
     }
+
+    @Test
+    void updateWithStaleVersionIsRejected() {
+        var s = service.create(new SupplierDtos.Create("Fresh Farms", null, null, null));
+        var v0 = s.getVersion();
+
+        var updated = service.update(s.getId(), new SupplierDtos.Create("Fresh Farms Ltd", null, null, null), v0);
+        assertThat(updated.getVersion()).isEqualTo(v0 + 1);
+
+        assertThatThrownBy(() -> service.update(s.getId(), new SupplierDtos.Create("Stale edit", null, null, null), v0))
+                .isInstanceOf(ObjectOptimisticLockingFailureException.class);
+        assertThat(service.get(s.getId()).getName()).isEqualTo("Fresh Farms Ltd");
+    }
 }
@@ -0,0 +1,74 @@
+package com.ges.backend.usage;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Insert throughput with and without JDBC batching. Skipped unless run explicitly:
+//   mvn test -Dtest=UsageInsertBenchmarkTest -Dbenchmark=true [-Dbenchmark.rows=50000]
+// Against MySQL, also pass -Dspring.datasource.url=jdbc:mysql://...&rewriteBatchedStatements=true
+// plus username, password and driver-class-name.
+@SpringBootTest
+@ActiveProfiles("test")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class UsageInsertBenchmarkTest {
+
+    @Autowired EntityManager em;
+    @Autowired EntityManagerFactory emf;
+    @Autowired PlatformTransactionManager txManager;
+
+    @Test
+    void insertThroughputWithAndWithoutBatching() {
+        int rows = Integer.getInteger("benchmark.rows", 20_000);
+        var stats = emf.unwrap(SessionFactory.class).getStatistics();
+        insert(1, rows / 10);
+        insert(50, rows / 10);
+
+        stats.clear();
+        double unbatched = insert(1, rows);
+        long unbatchedStatements = stats.getPrepareStatementCount();
+        stats.clear();
+        double batched = insert(50, rows);
+        long batchedStatements = stats.getPrepareStatementCount();
+
+        System.out.printf("usage inserts/s: batch size 1 = %.0f (%d statements), batch size 50 = %.0f (%d statements), %.1fx%n",
+                unbatched, unbatchedStatements, batched, batchedStatements, batched / unbatched);
+        assertThat(batchedStatements).isLessThan(unbatchedStatements);
+    }
+
+    private double insert(int batchSize, int rows) {
+        var tx = new TransactionTemplate(txManager);
+        var stockItemId = UUID.randomUUID();
+        long start = System.nanoTime();
+        tx.executeWithoutResult(status -> {
+            em.unwrap(Session.class).setJdbcBatchSize(batchSize);
+            for (int i = 0; i < rows; i++) {
+                var u = new Usage();
+                u.setStockItemId(stockItemId);
+                u.setQuantityUsed(BigDecimal.ONE);
+                u.setDate(LocalDate.of(2015, 1, 1).plusDays(i % 365));
+                u.setCreatedBy("benchmark");
+                em.persist(u);
+                if ((i + 1) % 1_000 == 0) {
+                    em.flush();
+                    em.clear();
+                }
+            }
+        });
+        return rows / ((System.nanoTime() - start) / 1e9);
+    }
+}
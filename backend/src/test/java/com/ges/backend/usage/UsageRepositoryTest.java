@@ -0,0 +1,68 @@
+package com.ges.backend.usage;
+
+import com.ges.backend.common.CapturedSql;
+import com.ges.backend.usage.dto.UsageDtos;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector=com.ges.backend.common.CapturedSql")
+@ActiveProfiles("test")
+class UsageRepositoryTest {
+
+    @Autowired UsageRepository repo;
+    @Autowired EntityManager em;
+
+    @Test
+    void filtersByDateRangeItemAndCreator() {
+        var flour = UUID.randomUUID();
+        var sugar = UUID.randomUUID();
+        repo.save(usage(flour, LocalDate.of(2030, 1, 5), "ana"));
+        repo.save(usage(flour, LocalDate.of(2030, 1, 20), "ben"));
+        repo.save(usage(sugar, LocalDate.of(2030, 1, 10), "ana"));
+        repo.save(usage(flour, LocalDate.of(2030, 2, 1), "ana"));
+
+        var january = new UsageDtos.Filter(LocalDate.of(2030, 1, 1), LocalDate.of(2030, 1, 31), null, null);
+        assertThat(repo.findAll(UsageRepository.matching(january), Pageable.unpaged())).hasSize(3);
+        var flourByAna = new UsageDtos.Filter(LocalDate.of(2030, 1, 1), LocalDate.of(2030, 1, 31), flour, "ana");
+        assertThat(repo.findAll(UsageRepository.matching(flourByAna), Pageable.unpaged()))
+                .singleElement().satisfies(u -> assertThat(u.getDate()).isEqualTo(LocalDate.of(2030, 1, 5)));
+        assertThat(repo.findAll(UsageRepository.matching(new UsageDtos.Filter(null, null, null, " ")), Pageable.unpaged())).hasSize(4);
+    }
+
+    @Test
+    void filteredListingUsesCompositeIndexes() {
+        var item = UUID.randomUUID();
+        var from = LocalDate.of(2030, 1, 1);
+        var to = LocalDate.of(2030, 1, 31);
+
+        assertThat(planOf(new UsageDtos.Filter(from, to, null, null), from, to)).containsIgnoringCase("idx_usages_date_item");
+        assertThat(planOf(new UsageDtos.Filter(null, null, item, null), item)).containsIgnoringCase("idx_usages_item_date");
+        assertThat(planOf(new UsageDtos.Filter(from, to, item, null), from, to, item)).containsIgnoringCase("idx_usages_item_date");
+    }
+
+    private String planOf(UsageDtos.Filter filter, Object... params) {
+        CapturedSql.clear();
+        repo.findAll(UsageRepository.matching(filter), PageRequest.of(0, 20));
+        return CapturedSql.explain(em, CapturedSql.lastSelectFrom("usages"), 20, params);
+    }
+
+    private static Usage usage(UUID item, LocalDate date, String createdBy) {
+        var u = new Usage();
+        u.setStockItemId(item);
+        u.setQuantityUsed(BigDecimal.ONE);
+        u.setDate(date);
+        u.setCreatedBy(createdBy);
+        return u;
+    }
+}
@@ -1,5 +1,6 @@
 package com.ges.backend.usage;
 
+import com.ges.backend.report.MonthlyRollupService;
 import com.ges.backend.stock.Category;
 import com.ges.backend.stock.StockItem;
 import com.ges.backend.stock.StockItemRepository;
@@ -12,6 +13,14 @@ import org.springframework.web.server.ResponseStatusException;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -22,6 +31,7 @@ class UsageServiceTest {
 
     @Autowired UsageService service;
     @Autowired StockItemRepository stockRepo;
+    @Autowired MonthlyRollupService rollups;
 
     @Test
     void createUsageDecrementsStock_andFailsOnInsufficient() {
@@ -41,4 +51,140 @@ class UsageServiceTest {
         var bad = new UsageDtos.Create(saved.getId(), new BigDecimal("20"), LocalDate.now(), "Too much");
         assertThrows(ResponseStatusException.class, () -> service.create(bad, "tester"));
     }
+
+    @Test
+    void concurrentUsagesNeverLoseUpdatesOrOversell() throws Exception {
+        var saved = stockRepo.save(item("Coffee", "150"));
+        int threads = 4, perThread = 50;
+        var ok = new AtomicInteger();
+        var insufficient = new AtomicInteger();
+        var start = new CountDownLatch(1);
+        var pool = Executors.newFixedThreadPool(threads);
+        try {
+            var futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        try {
+                            service.create(new UsageDtos.Create(saved.getId(), BigDecimal.ONE, LocalDate.now(), null), "till");
+                            ok.incrementAndGet();
+                        } catch (ResponseStatusException e) {
+                            assertThat(e.getReason()).isEqualTo("Insufficient stock");
+                            insufficient.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (var f : futures) f.get(60, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(ok.get()).isEqualTo(150);
+        assertThat(insufficient.get()).isEqualTo(threads * perThread - 150);
+        assertThat(stockRepo.findById(saved.getId()).orElseThrow().getQuantity()).isEqualByComparingTo("0");
+    }
+
+    @Test
+    void updateMovingUsageToAnotherItemRestoresTheOldOne() {
+        var milk = stockRepo.save(item("Milk", "10"));
+        var cream = stockRepo.save(item("Cream", "10"));
+        var usage = service.create(new UsageDtos.Create(milk.getId(), new BigDecimal("4"), LocalDate.now(), null), "tester");
+
+        service.update(usage.getId(), new UsageDtos.Create(cream.getId(), new BigDecimal("3"), LocalDate.now(), null), null);
+        assertThat(stockRepo.findById(milk.getId()).orElseThrow().getQuantity()).isEqualByComparingTo("10");
+        assertThat(stockRepo.findById(cream.getId()).orElseThrow().getQuantity()).isEqualByComparingTo("7");
+
+        service.update(usage.getId(), new UsageDtos.Create(cream.getId(), new BigDecimal("5"), LocalDate.now(), null), null);
+        assertThat(stockRepo.findById(cream.getId()).orElseThrow().getQuantity()).isEqualByComparingTo("5");
+        assertThrows(ResponseStatusException.class,
+                () -> service.update(usage.getId(), new UsageDtos.Create(cream.getId(), new BigDecimal("11"), LocalDate.now(), null), null));
+    }
+
+    @Test
+    void updateWithoutQuantityChangeLeavesTheStockRowAlone() {
+        var tea = stockRepo.save(item("Tea", "10"));
+        var usage = service.create(new UsageDtos.Create(tea.getId(), new BigDecimal("2"), LocalDate.now(), null), "tester");
+        var before = stockRepo.findById(tea.getId()).orElseThrow();
+
+        service.update(usage.getId(), new UsageDtos.Create(tea.getId(), new BigDecimal("2"), LocalDate.now(), "Renamed"), null);
+        var after = stockRepo.findById(tea.getId()).orElseThrow();
+        assertThat(after.getQuantity()).isEqualByComparingTo("8");
+        assertThat(after.getVersion()).isEqualTo(before.getVersion());
+    }
+
+    @Test
+    void editsAndDeletesReverseTheRollupAtTheRecordedPrice() {
+        var month = YearMonth.of(2048, 1);
+        var juice = stockRepo.save(item("Juice", "10"));
+        var before = rollups.current(month).getSalesValue();
+        var usage = service.create(new UsageDtos.Create(juice.getId(), new BigDecimal("3"), month.atDay(10), null), "tester");
+        assertThat(usage.getUnitPrice()).isEqualByComparingTo("1.00");
+
+        var repriced = stockRepo.findById(juice.getId()).orElseThrow();
+        repriced.setUnitPrice(new BigDecimal("5.00"));
+        stockRepo.save(repriced);
+
+        service.update(usage.getId(), new UsageDtos.Create(juice.getId(), new BigDecimal("2"), month.atDay(10), null), null);
+        assertThat(rollups.current(month).getSalesValue().subtract(before)).isEqualByComparingTo("2.00");
+        service.delete(usage.getId());
+        assertThat(rollups.current(month).getSalesValue()).isEqualByComparingTo(before);
+    }
+
+    @Test
+    void allOrNothingBatchWritesNothingWhenOneLineFails() {
+        var rice = stockRepo.save(item("Batch rice", "10"));
+        var beans = stockRepo.save(item("Batch beans", "2"));
+        var day = LocalDate.of(2044, 3, 1);
+        var lines = new ArrayList<UsageDtos.Create>();
+        for (int i = 0; i < 300; i++) lines.add(new UsageDtos.Create(rice.getId(), new BigDecimal("0.01"), day, "shift"));
+        lines.add(new UsageDtos.Create(beans.getId(), new BigDecimal("3"), day, "shift"));
+
+        var e = assertThrows(ResponseStatusException.class,
+                () -> service.createBatch(lines, UsageDtos.BatchMode.ALL_OR_NOTHING, "pos"));
+        assertThat(e.getReason()).contains("line 300", "Batch beans");
+        assertThat(stockRepo.findById(rice.getId()).orElseThrow().getQuantity()).isEqualByComparingTo("10");
+
+        lines.removeLast();
+        var response = service.createBatch(lines, UsageDtos.BatchMode.ALL_OR_NOTHING, "pos");
+        assertThat(response.created()).isEqualTo(300);
+        assertThat(response.results()).allSatisfy(r -> assertThat(r.id()).isNotNull());
+        assertThat(stockRepo.findById(rice.getId()).orElseThrow().getQuantity()).isEqualByComparingTo("7");
+        assertThat(service.get(response.results().get(299).id()).getCreatedBy()).isEqualTo("pos");
+    }
+
+    @Test
+    void perLineBatchSkipsLinesThatCannotBeApplied() {
+        var flour = stockRepo.save(item("Batch flour", "5"));
+        var day = LocalDate.of(2044, 4, 1);
+        var lines = new ArrayList<UsageDtos.Create>();
+        lines.add(new UsageDtos.Create(flour.getId(), new BigDecimal("3"), day, null));
+        lines.add(new UsageDtos.Create(flour.getId(), new BigDecimal("3"), day, null)); // only 2 left by now
+        lines.add(new UsageDtos.Create(flour.getId(), new BigDecimal("2"), day, null));
+        lines.add(new UsageDtos.Create(UUID.randomUUID(), BigDecimal.ONE, day, null));
+        lines.add(new UsageDtos.Create(flour.getId(), null, day, null));
+
+        var response = service.createBatch(lines, UsageDtos.BatchMode.PER_LINE, "pos");
+
+        assertThat(response.created()).isEqualTo(2);
+        assertThat(response.failed()).isEqualTo(3);
+        assertThat(response.results().get(1).error()).startsWith("Insufficient stock");
+        assertThat(response.results().get(2).id()).isNotNull();
+        assertThat(response.results().get(3).error()).isEqualTo("Stock item not found");
+        assertThat(response.results().get(4).error()).contains("quantityUsed");
+        assertThat(stockRepo.findById(flour.getId()).orElseThrow().getQuantity()).isEqualByComparingTo("0");
+    }
+
+    private static StockItem item(String name, String quantity) {
+        var item = new StockItem();
+        item.setName(name);
+        item.setCategory(Category.INGREDIENTS);
+        item.setQuantity(new BigDecimal(quantity));
+        item.setUnit("l");
+        item.setUnitPrice(new BigDecimal("1.00"));
+        return item;
+    }
 }
@@ -0,0 +1,112 @@
+package com.ges.backend.usage;
+
+import com.ges.backend.stock.Category;
+import com.ges.backend.stock.StockItem;
+import com.ges.backend.stock.StockItemRepository;
+import com.ges.backend.stock.StockItemService;
+import com.ges.backend.usage.dto.UsageDtos;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class UsageWriteBehindTest {
+
+    @Autowired UsageService usages;
+    @Autowired StockItemService stock;
+    @Autowired StockItemRepository stockRepo;
+
+    @Test
+    void reservesStockAndGroupCommitsEveryAcceptedLine() throws Exception {
+        var item = stockRepo.save(item("Queued coffee", "300"));
+        var queue = new UsageWriteBehind(usages, stock, true, 10_000, 50, Duration.ofMillis(10), Duration.ofSeconds(30));
+        queue.start();
+
+        var tasks = new ArrayList<Callable<Boolean>>();
+        for (int i = 0; i < 500; i++) {
+            tasks.add(() -> {
+                try {
+                    queue.submit(new UsageDtos.Create(item.getId(), BigDecimal.ONE, LocalDate.of(2045, 1, 1), null));
+                    return true;
+                } catch (ResponseStatusException e) {
+                    // 400 once the item's balance is spent, 503 while spent lines are still being written
+                    assertThat(e.getStatusCode().value()).isIn(400, 503);
+                    return false;
+                }
+            });
+        }
+        int accepted = 0;
+        try (var pool = Executors.newFixedThreadPool(8)) {
+            for (var f : pool.invokeAll(tasks)) if (f.get()) accepted++;
+        }
+        queue.stop();
+
+        assertThat(accepted).isEqualTo(300);
+        var stats = queue.stats();
+        assertThat(stats.queued()).isZero();
+        assertThat(stats.written()).isEqualTo(300);
+        assertThat(stats.rejected()).isZero();
+        assertThat(stats.batches()).isLessThan(300);
+        assertThat(stats.items()).isZero();
+        assertThat(stockRepo.findById(item.getId()).orElseThrow().getQuantity()).isEqualByComparingTo("0");
+    }
+
+    @Test
+    void fullQueueAnswers503AndShutdownDrainsIt() {
+        var item = stockRepo.save(item("Queued tea", "10"));
+        // The writer waits an hour between flushes, so nothing leaves the queue until stop()
+        var queue = new UsageWriteBehind(usages, stock, true, 2, 100, Duration.ofHours(1), Duration.ofSeconds(30));
+        queue.start();
+        var line = new UsageDtos.Create(item.getId(), BigDecimal.ONE, LocalDate.of(2045, 2, 1), null);
+
+        queue.submit(line);
+        queue.submit(line);
+        var e = assertThrows(ResponseStatusException.class, () -> queue.submit(line));
+        assertThat(e.getStatusCode().value()).isEqualTo(503);
+
+        queue.stop();
+        assertThat(queue.stats().written()).isEqualTo(2);
+        assertThat(stockRepo.findById(item.getId()).orElseThrow().getQuantity()).isEqualByComparingTo("8");
+        assertThat(assertThrows(ResponseStatusException.class, () -> queue.submit(line)).getStatusCode().value()).isEqualTo(503);
+    }
+
+    @Test
+    void unknownItemsAreRejectedWithoutBeingTracked() {
+        var item = stockRepo.save(item("Queued cocoa", "1"));
+        var queue = new UsageWriteBehind(usages, stock, true, 100, 100, Duration.ofHours(1), Duration.ofSeconds(30));
+        queue.start();
+
+        for (int i = 0; i < 5; i++) {
+            var unknown = new UsageDtos.Create(UUID.randomUUID(), BigDecimal.ONE, LocalDate.of(2045, 3, 1), null);
+            assertThat(assertThrows(ResponseStatusException.class, () -> queue.submit(unknown)).getStatusCode().value()).isEqualTo(404);
+        }
+        var tooMuch = new UsageDtos.Create(item.getId(), BigDecimal.TEN, LocalDate.of(2045, 3, 1), null);
+        assertThat(assertThrows(ResponseStatusException.class, () -> queue.submit(tooMuch)).getStatusCode().value()).isEqualTo(400);
+        assertThat(queue.stats().items()).isZero();
+        queue.stop();
+    }
+
+    private static StockItem item(String name, String quantity) {
+        var item = new StockItem();
+        item.setName(name);
+        item.setCategory(Category.DRINKS);
+        item.setQuantity(new BigDecimal(quantity));
+        item.setUnit("cup");
+        item.setUnitPrice(new BigDecimal("1.00"));
+        return item;
+    }
+}